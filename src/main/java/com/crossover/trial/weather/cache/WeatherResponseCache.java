@@ -0,0 +1,133 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.cache;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ *  Weather Response Cache
+ *
+ *  Keeps the serialized JSON answer of radius queries. Each entry remembers the
+ *  airports of its neighbourhood along with their measurement versions, so it is
+ *  dropped exactly when one of them gets a new measurement. Any change to the
+ *  airport catalog invalidates every entry.
+ */
+@Component
+public class WeatherResponseCache {
+
+    @Value("${weather.query.cache.max-entries:1024}") long maxEntries;
+    @Value("${weather.query.cache.ttl:60}") long ttlInSeconds;
+
+    @Autowired LatestMeasurementStore latestMeasurements;
+    @Autowired(required=false) ObjectMapper objectMapper;
+
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private Cache<String, Entry> entries;
+
+    @PostConstruct
+    public void init() {
+        if (objectMapper == null)
+            objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        entries = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public byte[] find(IATA iata, double radius,
+                       Supplier<List<Airport>> neighbourhood,
+                       Function<List<Airport>, ?> response) {
+        Assert.isTrue(iata != null, "iata is required");
+
+        String key = iata + "/" + radius;
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.isCurrent())
+            return entry.json;
+
+        // Stamps are taken before the data they guard is read
+        long catalog = catalogVersion.get();
+        List<Airport> airports = neighbourhood.get();
+        IATA[] iatas = new IATA[airports.size()];
+        long[] versions = new long[iatas.length];
+        for (int i = 0; i < iatas.length; i++) {
+            iatas[i] = airports.get(i).getIata();
+            versions[i] = latestMeasurements.version(iatas[i]);
+        }
+
+        try {
+            entry = new Entry(objectMapper.writeValueAsBytes(response.apply(airports)),
+                    catalog, iatas, versions);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        entries.put(key, entry);
+        return entry.json;
+    }
+
+    public void invalidateAll() {
+        catalogVersion.incrementAndGet();
+        entries.invalidateAll();
+    }
+
+    private class Entry {
+
+        private final byte[] json;
+        private final long catalog;
+        private final IATA[] iatas;
+        private final long[] versions;
+
+        Entry(byte[] json, long catalog, IATA[] iatas, long[] versions) {
+            this.json = json;
+            this.catalog = catalog;
+            this.iatas = iatas;
+            this.versions = versions;
+        }
+
+        boolean isCurrent() {
+            if (catalog != catalogVersion.get())
+                return false;
+            for (int i = 0; i < iatas.length; i++)
+                if (versions[i] != latestMeasurements.version(iatas[i]))
+                    return false;
+            return true;
+        }
+    }
+}
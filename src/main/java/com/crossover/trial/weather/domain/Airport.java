@@ -30,6 +30,7 @@ import org.springframework.util.Assert;
 import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
 import static com.crossover.trial.weather.util.Constants.EARTH_RADIUS;
@@ -39,7 +40,10 @@ import static com.crossover.trial.weather.util.Constants.EARTH_RADIUS;
  *
  *  Represents an Airport identified by IATA along with it's latitude and longitude
  */
-@Entity @Table(name="AIRPORT")
+@Entity @Table(name="AIRPORT", indexes={
+        @Index(name="AIRPORT_LATITUDE", columnList="latitude"),
+        @Index(name="AIRPORT_LONGITUDE", columnList="longitude")
+})
 @JsonDeserialize(builder = Airport.Builder.class)
 public class Airport implements Comparable<Airport> {
 
@@ -76,10 +80,10 @@ public class Airport implements Comparable<Airport> {
 
     public double calculateDistance(Airport toAirport) {
         Assert.isTrue(toAirport != null, "airport is required");
-        double deltaLat = Math.toRadians(toAirport.latitude - latitude);
-        double deltaLon = Math.toRadians(toAirport.longitude - longitude);
-        double a =  Math.pow(Math.sin(deltaLat / 2), 2) + Math.pow(Math.sin(deltaLon / 2), 2)
-                * Math.cos(latitude) * Math.cos(toAirport.latitude);
+        double sinDeltaLat = Math.sin(Math.toRadians(toAirport.latitude - latitude) / 2);
+        double sinDeltaLon = Math.sin(Math.toRadians(toAirport.longitude - longitude) / 2);
+        double a =  sinDeltaLat * sinDeltaLat + sinDeltaLon * sinDeltaLon
+                * Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(toAirport.latitude));
         double c = 2 * Math.asin(Math.sqrt(a));
         return EARTH_RADIUS * c;
     }
@@ -22,7 +22,11 @@
  */
 package com.crossover.trial.weather.domain;
 
+import java.util.List;
+
 public interface AirportRepositoryCustom {
 
-    Iterable<Airport> findInRadius(IATA fromIata, double distanceInKm);
+    List<Airport> findInRadius(IATA fromIata, double distanceInKm);
+
+    List<Airport> findNearest(IATA fromIata, int count);
 }
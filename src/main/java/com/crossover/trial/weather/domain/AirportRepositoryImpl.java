@@ -22,36 +22,32 @@
  */
 package com.crossover.trial.weather.domain;
 
+import com.crossover.trial.weather.spatial.AirportIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
-import javax.persistence.EntityManager;
-import java.util.Collections;
-import java.util.stream.Collectors;
+import java.util.List;
 
 @Component
 public class AirportRepositoryImpl implements AirportRepositoryCustom {
 
-    @Autowired AirportRepository airportRepository;
-    @Autowired EntityManager manager;
+    @Autowired AirportIndex airportIndex;
 
     @Override
-    @Transactional(readOnly=true)
-    public Iterable<Airport> findInRadius(IATA fromIata, double distanceInKm) {
+    public List<Airport> findInRadius(IATA fromIata, double distanceInKm) {
         Assert.isTrue(fromIata != null, "fromIata is required");
         Assert.isTrue(distanceInKm > 0, "distanceInKm must be positive");
 
-        Airport fromAirport = airportRepository.findOne(fromIata);
-        if (fromAirport == null)
-            return Collections.emptyList();
+        return airportIndex.findInRadius(fromIata, distanceInKm);
+    }
+
+    @Override
+    public List<Airport> findNearest(IATA fromIata, int count) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(count > 0, "count must be positive");
 
-        return manager.createQuery("select a from Airport a where iata != :fromIata", Airport.class)
-                .setParameter("fromIata", fromIata)
-                .getResultList().parallelStream()
-                .filter(toAirport -> fromAirport.calculateDistance(toAirport) <= distanceInKm)
-                .collect(Collectors.toList());
+        return airportIndex.findNearest(fromIata, count);
     }
 
 }
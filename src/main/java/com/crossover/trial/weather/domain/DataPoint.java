@@ -37,7 +37,9 @@ import javax.persistence.*;
 @JsonDeserialize(builder=DataPoint.Builder.class)
 public class DataPoint {
 
-    @Id @GeneratedValue(strategy = GenerationType.AUTO)
+    // Pooled sequence, one round trip hands out a whole block of ids
+    @Id @GeneratedValue(strategy=GenerationType.SEQUENCE, generator="DATAPOINT_SEQ")
+    @SequenceGenerator(name="DATAPOINT_SEQ", sequenceName="DATAPOINT_SEQ", allocationSize=100)
     private Long id;
 
     @Column(length=100, precision=10)
@@ -87,9 +89,13 @@ public class DataPoint {
         return type;
     }
 
+    public boolean isInsideRange() {
+        return type.isInsideRange(mean);
+    }
+
     Measurement createMeasurement(Airport airport) {
         Assert.isTrue(airport != null, "airport is required");
-        if (type.isInsideRange(mean))
+        if (isInsideRange())
             return new Measurement(airport, this);
         return null;
     }
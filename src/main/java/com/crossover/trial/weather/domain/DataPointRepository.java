@@ -22,15 +22,8 @@
  */
 package com.crossover.trial.weather.domain;
 
-import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
-import org.springframework.data.repository.query.Param;
-
-import java.time.ZonedDateTime;
 
 public interface DataPointRepository extends CrudRepository<DataPoint, Long>, DataPointRepositoryCustom {
 
-    @Query("select count(m) from Measurement m where timestamp >= :timeWindow")
-    long countTotalMeasurementsInLastTimeWindow(@Param("timeWindow") ZonedDateTime timeWindow);
-
 }
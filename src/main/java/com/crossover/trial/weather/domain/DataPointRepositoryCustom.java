@@ -22,6 +22,9 @@
  */
 package com.crossover.trial.weather.domain;
 
+import java.time.ZonedDateTime;
+import java.util.List;
+
 public interface DataPointRepositoryCustom {
 
     Measurement createMeasurement(IATA iata, DataPoint dataPoint);
@@ -30,6 +33,10 @@ public interface DataPointRepositoryCustom {
     Measurement findLatestMeasurementForIata(IATA iata);
     Measurement findLatestMeasurementForIata(Airport airport);
 
+    List<Measurement> findLatestMeasurementsByType();
+
     void deleteAllMeasurements(IATA iata);
 
+    long countTotalMeasurementsInLastTimeWindow(ZonedDateTime timeWindow);
+
 }
@@ -22,7 +22,10 @@
  */
 package com.crossover.trial.weather.domain;
 
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import com.crossover.trial.weather.metrics.MeasurementCounter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
@@ -30,24 +33,44 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 import javax.persistence.EntityManager;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.crossover.trial.weather.util.TransactionHooks.afterCommit;
 
 @Component
+@ConditionalOnProperty(name="weather.measurements.storage", havingValue="jpa", matchIfMissing=true)
 public class DataPointRepositoryImpl implements DataPointRepositoryCustom {
 
+    // Grouped and joined on MEASUREMENT_LATEST alone, the sequence is unique within an airport
+    static final String LATEST_POINTS = "select m.idPoint from MEASUREMENT m " +
+            "join (select iata, type, max(sequence) latest from MEASUREMENT group by iata, type) l " +
+            "on m.iata = l.iata and m.type = l.type and m.sequence = l.latest";
+
+    private static final int FETCH_SIZE = 1000;
+
     @Autowired EntityManager manager;
     @Autowired AirportRepository airportRepository;
+    @Autowired LatestMeasurementStore latestMeasurements;
+    @Autowired MeasurementSequencer sequencer;
+    @Autowired MeasurementRollupRepository rollupRepository;
+    @Autowired MeasurementCounter measurementCounter;
 
     @Override
     @Transactional(propagation=Propagation.MANDATORY)
     public Measurement createMeasurement(IATA iata, DataPoint dataPoint) {
         Assert.isTrue(iata != null, "iata is required");
         Assert.isTrue(dataPoint != null, "dataPoint is required");
+        if (!dataPoint.isInsideRange())
+            return null;
 
         Airport airport = airportRepository.findOne(iata);
         if (airport == null)
             return null;
 
-        return createMeasurement(airport, dataPoint);
+        return persist(airport, dataPoint);
     }
 
     @Override
@@ -56,12 +79,22 @@ public class DataPointRepositoryImpl implements DataPointRepositoryCustom {
         Assert.isTrue(airport != null, "airport is required");
         Assert.isTrue(dataPoint != null, "dataPoint is required");
 
+        // Rejected readings never reach the EntityManager
+        if (!dataPoint.isInsideRange())
+            return null;
+
+        return persist(airport, dataPoint);
+    }
+
+    // DATAPOINT and MEASUREMENT rows are different statements, flushed as separate JDBC batches
+    private Measurement persist(Airport airport, DataPoint dataPoint) {
         manager.persist(dataPoint);
-        Measurement measurement = dataPoint.createMeasurement(airport);
-        if (measurement != null)
-            manager.persist(measurement);
-        else
-            manager.remove(dataPoint);
+        Measurement measurement = sequencer.next(airport, dataPoint);
+        manager.persist(measurement);
+        afterCommit(() -> {
+            latestMeasurements.update(measurement);
+            measurementCounter.increment();
+        });
 
         return measurement;
     }
@@ -73,7 +106,7 @@ public class DataPointRepositoryImpl implements DataPointRepositoryCustom {
             Assert.isTrue(iata != null, "iata is required");
             return manager.createQuery("select m from Measurement m " +
                     "where m.airport.iata = :iata " +
-                    "order by timestamp desc", Measurement.class)
+                    "order by timestamp desc, sequence desc", Measurement.class)
                     .setParameter("iata", iata)
                     .setMaxResults(1)
                     .getSingleResult();
@@ -89,6 +122,23 @@ public class DataPointRepositoryImpl implements DataPointRepositoryCustom {
         return findLatestMeasurementForIata(airport.getIata());
     }
 
+    @Override
+    @Transactional(readOnly=true)
+    public List<Measurement> findLatestMeasurementsByType() {
+        @SuppressWarnings("unchecked")
+        List<Number> points = manager.createNativeQuery(LATEST_POINTS).getResultList();
+
+        List<Measurement> latest = new ArrayList<>(points.size());
+        for (int from = 0; from < points.size(); from += FETCH_SIZE)
+            latest.addAll(manager.createQuery("select m from Measurement m " +
+                    "join fetch m.airport join fetch m.point " +
+                    "where m.id.idPoint in :points", Measurement.class)
+                    .setParameter("points", points.subList(from, Math.min(from + FETCH_SIZE, points.size()))
+                            .stream().map(Number::longValue).collect(Collectors.toList()))
+                    .getResultList());
+        return latest;
+    }
+
     @Override
     @Transactional
     public void deleteAllMeasurements(IATA iata) {
@@ -96,5 +146,20 @@ public class DataPointRepositoryImpl implements DataPointRepositoryCustom {
         manager.createQuery("delete from Measurement where id.iata = :iata")
                 .setParameter("iata", iata.getCode())
                 .executeUpdate();
+        manager.createQuery("delete from MeasurementRollup where iata = :iata")
+                .setParameter("iata", iata.getCode())
+                .executeUpdate();
+        afterCommit(() -> latestMeasurements.remove(iata));
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public long countTotalMeasurementsInLastTimeWindow(ZonedDateTime timeWindow) {
+        Assert.isTrue(timeWindow != null, "timeWindow is required");
+        // Aged out measurements are counted from their rollups, to the nearest period
+        return manager.createQuery("select count(m) from Measurement m where timestamp >= :timeWindow", Long.class)
+                .setParameter("timeWindow", timeWindow)
+                .getSingleResult() +
+            rollupRepository.countSamplesSince(timeWindow.toInstant().toEpochMilli());
     }
 }
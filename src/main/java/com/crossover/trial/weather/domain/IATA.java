@@ -44,6 +44,11 @@ import java.io.Serializable;
 @JsonDeserialize(using=IATADeserializer.class)
 public final class IATA implements Comparable<IATA>, Serializable {
 
+    /**
+     * Number of distinct 3-letter codes, the size of the dense index space
+     */
+    public static final int CARDINALITY = 26 * 26 * 26;
+
     @Column(name="iata")
     private String code;
 
@@ -53,6 +58,17 @@ public final class IATA implements Comparable<IATA>, Serializable {
         return new IATA(code);
     }
 
+    /**
+     * Inverse of {@link #toIndex()}
+     */
+    public static IATA fromIndex(int index) {
+        Assert.isTrue(index >= 0 && index < CARDINALITY, "index must be in [0, CARDINALITY)");
+        return new IATA(new String(new char[] {
+                (char) ('A' + index / (26 * 26)),
+                (char) ('A' + index / 26 % 26),
+                (char) ('A' + index % 26) }));
+    }
+
     protected IATA() {}
 
     private IATA(String code) {
@@ -63,6 +79,13 @@ public final class IATA implements Comparable<IATA>, Serializable {
         return code;
     }
 
+    /**
+     * Dense index of this code in [0, {@link #CARDINALITY})
+     */
+    public int toIndex() {
+        return ((code.charAt(0) - 'A') * 26 + (code.charAt(1) - 'A')) * 26 + (code.charAt(2) - 'A');
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
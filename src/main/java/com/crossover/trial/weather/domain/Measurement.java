@@ -22,6 +22,8 @@
  */
 package com.crossover.trial.weather.domain;
 
+import org.springframework.util.Assert;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.time.ZoneId;
@@ -33,7 +35,10 @@ import java.time.ZonedDateTime;
  * Represents the measurement of a {@link DataPoint} for a specific {@link Airport}
  * and a specified date and time
  */
-@Entity @Table(name="MEASUREMENT")
+@Entity @Table(name="MEASUREMENT", indexes={
+        @Index(name="MEASUREMENT_IATA_SEQUENCE", columnList="iata,sequence"),
+        @Index(name="MEASUREMENT_TIMESTAMP", columnList="timestamp"),
+        @Index(name="MEASUREMENT_LATEST", columnList="iata,type,sequence")})
 public class Measurement {
 
     @EmbeddedId
@@ -50,13 +55,24 @@ public class Measurement {
     @Column(insertable=false, updatable=false)
     private ZonedDateTime timestamp;
 
+    private Long sequence;
+
+    // Copied from the data point, so the latest of each type is found from an index
+    @Enumerated(EnumType.STRING) @Column(updatable=false)
+    private DataPointType type;
+
     protected Measurement() {}
 
     Measurement(Airport airport, DataPoint point) {
+        this(airport, point, timestamp(), null);
+    }
+
+    Measurement(Airport airport, DataPoint point, ZonedDateTime timestamp, Long sequence) {
         this.airport = airport;
         this.point = point;
-
-        timestamp = timestamp();
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+        this.type = point.getType();
 
         id = new PK(airport, point, timestamp);
     }
@@ -77,6 +93,27 @@ public class Measurement {
         return timestamp;
     }
 
+    /**
+     * Position in the write order of its airport, null for measurements recorded before sequencing
+     */
+    public Long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Measurements of the same airport follow their sequence, otherwise the timestamp decides and
+     * a tie goes to the newest data point
+     */
+    public boolean isNewerThan(Measurement other) {
+        Assert.isTrue(other != null, "other is required");
+        if (sequence != null && other.sequence != null && airport.equals(other.airport))
+            return sequence > other.sequence;
+
+        return timestamp.isEqual(other.timestamp) ?
+                point.getId() > other.point.getId() :
+                timestamp.isAfter(other.timestamp);
+    }
+
     public static ZonedDateTime timestamp() {
         return ZonedDateTime.now(ZoneId.of("UTC"));
     }
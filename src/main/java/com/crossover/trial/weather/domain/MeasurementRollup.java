@@ -0,0 +1,181 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.domain;
+
+import javax.persistence.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ *  Measurement Rollup Entity
+ *
+ *  Aggregate of the measurements of one airport and {@link DataPointType} over an hour or a
+ *  day, kept once the raw rows have aged out. The mean and quartiles are weighted by the
+ *  readings' count, min and max are taken over the means. Merging quartiles by weight is an
+ *  approximation, the exact ones can't be recovered from the summaries.
+ */
+@Entity @Table(name="MEASUREMENT_ROLLUP", uniqueConstraints=
+        @UniqueConstraint(name="MEASUREMENT_ROLLUP_PERIOD", columnNames={"resolution", "iata", "type", "periodStart"}))
+public class MeasurementRollup {
+
+    public enum Resolution {
+
+        HOUR(ChronoUnit.HOURS), DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Resolution(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * Start of the period holding the timestamp, in milliseconds since the epoch
+         */
+        public long periodOf(ZonedDateTime timestamp) {
+            return timestamp.withZoneSameInstant(UTC).truncatedTo(unit).toInstant().toEpochMilli();
+        }
+    }
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    @Id @GeneratedValue
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private Resolution resolution;
+
+    @Column(length=3)
+    private String iata;
+
+    @Enumerated(EnumType.STRING)
+    private DataPointType type;
+
+    private long periodStart;
+
+    private long samples;
+    private long count;
+    private double mean;
+    private double min;
+    private double max;
+    private double first;
+    private double second;
+    private double third;
+
+    protected MeasurementRollup() {}
+
+    MeasurementRollup(Resolution resolution, IATA iata, DataPointType type, long periodStart) {
+        this.resolution = resolution;
+        this.iata = iata.getCode();
+        this.type = type;
+        this.periodStart = periodStart;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    Long getId() {
+        return id;
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public IATA getIata() {
+        return IATA.valueOf(iata);
+    }
+
+    public DataPointType getType() {
+        return type;
+    }
+
+    public ZonedDateTime getPeriodStart() {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(periodStart), UTC);
+    }
+
+    /**
+     * Number of raw measurements folded in
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getFirst() {
+        return first;
+    }
+
+    public double getSecond() {
+        return second;
+    }
+
+    public double getThird() {
+        return third;
+    }
+
+    void add(DataPoint point) {
+        merge(1, point.getCount(), point.getMean(), point.getMean(), point.getMean(),
+                point.getFirst(), point.getSecond(), point.getThird());
+    }
+
+    void add(MeasurementRollup rollup) {
+        merge(rollup.samples, rollup.count, rollup.mean, rollup.min, rollup.max,
+                rollup.first, rollup.second, rollup.third);
+    }
+
+    private void merge(long samples, long count, double mean, double min, double max,
+                       double first, double second, double third) {
+        // Readings without a count still weigh in, one each, when nothing else has a count
+        double weight = this.count + count == 0 ? this.samples : this.count;
+        double otherWeight = this.count + count == 0 ? samples : count;
+
+        this.mean = weighted(this.mean, weight, mean, otherWeight);
+        this.first = weighted(this.first, weight, first, otherWeight);
+        this.second = weighted(this.second, weight, second, otherWeight);
+        this.third = weighted(this.third, weight, third, otherWeight);
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+        this.samples += samples;
+        this.count += count;
+    }
+
+    private static double weighted(double value, double weight, double other, double otherWeight) {
+        return weight + otherWeight == 0 ? other : (value * weight + other * otherWeight) / (weight + otherWeight);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.domain;
+
+import com.crossover.trial.weather.domain.MeasurementRollup.Resolution;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import javax.persistence.EntityManager;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+public class MeasurementRollupRepositoryImpl implements MeasurementRollupRepositoryCustom {
+
+    @Autowired EntityManager manager;
+
+    @Override
+    @Transactional
+    public int rollUpMeasurements(ZonedDateTime before, int limit) {
+        Assert.isTrue(before != null, "before is required");
+        Assert.isTrue(limit > 0, "limit must be positive");
+
+        // The latest of every airport and type stays raw, so latest queries never need the rollups.
+        // It is told apart by its sequence, as measurements may share a timestamp
+        List<Measurement> measurements = manager.createQuery("select m from Measurement m " +
+                "join fetch m.point " +
+                "where m.timestamp < :before " +
+                "and m.sequence < (select max(l.sequence) from Measurement l " +
+                    "where l.id.iata = m.id.iata and l.type = m.type)", Measurement.class)
+                .setParameter("before", before)
+                .setMaxResults(limit)
+                .getResultList();
+        if (measurements.isEmpty())
+            return 0;
+
+        Map<String, MeasurementRollup> rollups = new HashMap<>();
+        for (Measurement measurement : measurements)
+            rollup(rollups, Resolution.HOUR, measurement.getAirport().getIata(), measurement.getPoint().getType(),
+                    Resolution.HOUR.periodOf(measurement.getTimestamp()))
+                    .add(measurement.getPoint());
+
+        List<Long> ids = measurements.stream()
+                .map(measurement -> measurement.getPoint().getId())
+                .collect(Collectors.toList());
+        manager.createQuery("delete from Measurement m where m.id.idPoint in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+        manager.createQuery("delete from DataPoint p where p.id in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+
+        return measurements.size();
+    }
+
+    @Override
+    @Transactional
+    public int rollUpHours(ZonedDateTime before, int limit) {
+        Assert.isTrue(before != null, "before is required");
+        Assert.isTrue(limit > 0, "limit must be positive");
+
+        List<MeasurementRollup> hours = manager.createQuery("select r from MeasurementRollup r " +
+                "where r.resolution = :resolution and r.periodStart < :before", MeasurementRollup.class)
+                .setParameter("resolution", Resolution.HOUR)
+                .setParameter("before", before.toInstant().toEpochMilli())
+                .setMaxResults(limit)
+                .getResultList();
+        if (hours.isEmpty())
+            return 0;
+
+        Map<String, MeasurementRollup> rollups = new HashMap<>();
+        for (MeasurementRollup hour : hours)
+            rollup(rollups, Resolution.DAY, hour.getIata(), hour.getType(), Resolution.DAY.periodOf(hour.getPeriodStart()))
+                    .add(hour);
+
+        manager.createQuery("delete from MeasurementRollup r where r.id in :ids")
+                .setParameter("ids", hours.stream().map(MeasurementRollup::getId).collect(Collectors.toList()))
+                .executeUpdate();
+
+        return hours.size();
+    }
+
+    private MeasurementRollup rollup(Map<String, MeasurementRollup> rollups, Resolution resolution,
+                                     IATA iata, DataPointType type, long periodStart) {
+        return rollups.computeIfAbsent(iata + "/" + type + "/" + periodStart, key -> {
+            List<MeasurementRollup> existing = manager.createQuery("select r from MeasurementRollup r " +
+                    "where r.resolution = :resolution and r.iata = :iata " +
+                    "and r.type = :type and r.periodStart = :periodStart", MeasurementRollup.class)
+                    .setParameter("resolution", resolution)
+                    .setParameter("iata", iata.getCode())
+                    .setParameter("type", type)
+                    .setParameter("periodStart", periodStart)
+                    .getResultList();
+            if (!existing.isEmpty())
+                return existing.get(0);
+
+            MeasurementRollup rollup = new MeasurementRollup(resolution, iata, type, periodStart);
+            manager.persist(rollup);
+            return rollup;
+        });
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.domain;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  Measurement Sequencer
+ *
+ *  Orders the measurements of each airport. Under a lock striped by IATA hash it hands out
+ *  the next per-airport sequence together with a timestamp that never goes back, even when
+ *  the wall clock does, so "latest" has a single meaning. Airports on different stripes never
+ *  wait on each other. The first measurement of an airport picks up where the database left.
+ */
+@Component
+public class MeasurementSequencer {
+
+    @Value("${weather.ingest.lock-stripes:64}") int stripes;
+
+    @Autowired EntityManager manager;
+
+    private final long[] sequences = new long[IATA.CARDINALITY];
+    private final ZonedDateTime[] timestamps = new ZonedDateTime[IATA.CARDINALITY];
+    private final boolean[] seeded = new boolean[IATA.CARDINALITY];
+
+    private Lock[] locks;
+
+    @PostConstruct
+    public void init() {
+        Assert.isTrue(stripes > 0 && Integer.bitCount(stripes) == 1, "weather.ingest.lock-stripes must be a power of two");
+
+        locks = new Lock[stripes];
+        for (int stripe = 0; stripe < stripes; stripe++)
+            locks[stripe] = new ReentrantLock();
+    }
+
+    Measurement next(Airport airport, DataPoint dataPoint) {
+        IATA iata = airport.getIata();
+        int index = iata.toIndex();
+
+        Lock lock = locks[stripe(iata)];
+        lock.lock();
+        try {
+            if (!seeded[index])
+                seed(iata, index);
+
+            ZonedDateTime timestamp = Measurement.timestamp();
+            if (timestamps[index] != null && timestamp.isBefore(timestamps[index]))
+                timestamp = timestamps[index];
+            timestamps[index] = timestamp;
+
+            return new Measurement(airport, dataPoint, timestamp, ++sequences[index]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void seed(IATA iata, int index) {
+        List<Object[]> last = manager.createQuery("select m.sequence, m.timestamp from Measurement m " +
+                "where m.id.iata = :iata " +
+                "and m.sequence = (select max(l.sequence) from Measurement l where l.id.iata = :iata)", Object[].class)
+                .setParameter("iata", iata.getCode())
+                .getResultList();
+
+        if (!last.isEmpty()) {
+            sequences[index] = (Long) last.get(0)[0];
+            timestamps[index] = (ZonedDateTime) last.get(0)[1];
+        }
+        seeded[index] = true;
+    }
+
+    private int stripe(IATA iata) {
+        int hash = iata.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes - 1);
+    }
+}
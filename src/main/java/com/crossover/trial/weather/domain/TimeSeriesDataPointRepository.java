@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.domain;
+
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import com.crossover.trial.weather.metrics.MeasurementCounter;
+import com.crossover.trial.weather.timeseries.Sample;
+import com.crossover.trial.weather.timeseries.TimeSeriesStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ *  Time Series Data Point Repository
+ *
+ *  Keeps measurements in the {@link TimeSeriesStore} instead of MEASUREMENT and DATAPOINT rows.
+ *  Registered under the name Spring Data looks up for the custom part of
+ *  {@link DataPointRepository}, so it replaces {@link DataPointRepositoryImpl} when
+ *  weather.measurements.storage is timeseries. Appends are not rolled back with the surrounding
+ *  transaction, and only reach disk once their chunk is sealed, when full or on a clean
+ *  shutdown. A crash loses the readings still held in the active chunks.
+ */
+@Component("dataPointRepositoryImpl")
+@ConditionalOnProperty(name="weather.measurements.storage", havingValue="timeseries")
+public class TimeSeriesDataPointRepository implements DataPointRepositoryCustom {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    @Autowired TimeSeriesStore store;
+    @Autowired AirportRepository airportRepository;
+    @Autowired LatestMeasurementStore latestMeasurements;
+    @Autowired MeasurementCounter measurementCounter;
+
+    @Override
+    public Measurement createMeasurement(IATA iata, DataPoint dataPoint) {
+        Assert.isTrue(iata != null, "iata is required");
+        Assert.isTrue(dataPoint != null, "dataPoint is required");
+        if (!dataPoint.isInsideRange())
+            return null;
+
+        Airport airport = airportRepository.findOne(iata);
+        if (airport == null)
+            return null;
+
+        return createMeasurement(airport, dataPoint);
+    }
+
+    @Override
+    public Measurement createMeasurement(Airport airport, DataPoint dataPoint) {
+        Assert.isTrue(airport != null, "airport is required");
+        Assert.isTrue(dataPoint != null, "dataPoint is required");
+        if (!dataPoint.isInsideRange())
+            return null;
+
+        Measurement measurement = toMeasurement(airport, store.append(airport.getIata(), dataPoint));
+        latestMeasurements.update(measurement);
+        measurementCounter.increment();
+        return measurement;
+    }
+
+    @Override
+    public Measurement findLatestMeasurementForIata(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+
+        Measurement latest = null;
+        Airport airport = null;
+        for (DataPointType type : DataPointType.values()) {
+            Sample sample = store.latest(iata, type);
+            if (sample == null)
+                continue;
+            if (airport == null && (airport = airportRepository.findOne(iata)) == null)
+                return null;
+
+            Measurement candidate = toMeasurement(airport, sample);
+            if (latest == null || candidate.isNewerThan(latest))
+                latest = candidate;
+        }
+        return latest;
+    }
+
+    @Override
+    public Measurement findLatestMeasurementForIata(Airport airport) {
+        Assert.isTrue(airport != null, "airport is required");
+        return findLatestMeasurementForIata(airport.getIata());
+    }
+
+    @Override
+    public List<Measurement> findLatestMeasurementsByType() {
+        Map<IATA, Optional<Airport>> airports = new HashMap<>();
+        return store.latest().stream()
+                .map(sample -> airports.computeIfAbsent(sample.getIata(),
+                        iata -> Optional.ofNullable(airportRepository.findOne(iata)))
+                        .map(airport -> toMeasurement(airport, sample))
+                        .orElse(null))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void deleteAllMeasurements(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+        store.delete(iata);
+        latestMeasurements.remove(iata);
+    }
+
+    @Override
+    public long countTotalMeasurementsInLastTimeWindow(ZonedDateTime timeWindow) {
+        Assert.isTrue(timeWindow != null, "timeWindow is required");
+        return store.countSince(timeWindow.toInstant().toEpochMilli());
+    }
+
+    private static Measurement toMeasurement(Airport airport, Sample sample) {
+        return new Measurement(airport, sample.toDataPoint(),
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(sample.getTimestamp()), UTC), sample.getSequence());
+    }
+}
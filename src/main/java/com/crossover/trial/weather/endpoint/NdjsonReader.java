@@ -0,0 +1,240 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.endpoint;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.WRAP_EXCEPTIONS;
+
+/**
+ *  NDJSON Reader
+ *
+ *  Binds the records of a newline-delimited JSON body one at a time from a streaming parser,
+ *  so a long-lived body is never held in memory. A record that is not valid JSON, or does not
+ *  bind, is rejected and parsing resumes on the line after it. So is a record longer than the
+ *  limit, which is given up on as soon as the parser asks for more than that.
+ *
+ *  The parser reads ahead, and a broken record may already have run into the next line. The
+ *  bytes handed to the parser since the current record began are kept in a ring the size of
+ *  the limit, and the next line is replayed from there into a fresh parser. Only a failed
+ *  record costs a new parser.
+ */
+class NdjsonReader<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(NdjsonReader.class);
+
+    static final String MALFORMED = "malformed reading";
+    static final String TOO_LONG = "reading is too long";
+
+    private final ObjectReader reader;
+    private final RecordInput input;
+
+    private JsonParser parser;
+    private long parserStart;
+    private int parserLine = 1;
+
+    NdjsonReader(ObjectMapper mapper, Class<T> type, InputStream body, int maxRecordBytes) throws IOException {
+        Assert.isTrue(maxRecordBytes > 0, "maxRecordBytes must be positive");
+
+        // A syntax error inside a value is rethrown as it is, wrapping it with the property path
+        // needs a newer jackson-core than the one jackson-databind runs on here
+        this.reader = mapper.readerFor(type).without(WRAP_EXCEPTIONS);
+        this.input = new RecordInput(body, maxRecordBytes);
+        this.parser = createParser();
+    }
+
+    /**
+     * Next record of the body, or null at its end
+     */
+    Record<T> next() throws IOException {
+        input.startRecord(parserStart + parser.getCurrentLocation().getByteOffset());
+
+        JsonLocation start = null;
+        try {
+            if (parser.nextToken() == null)
+                return null;
+            start = parser.getTokenLocation();
+            input.startRecord(parserStart + start.getByteOffset());
+
+            T value = reader.readValue(parser);
+            return value == null ?
+                    new Record<>(line(start), null, MALFORMED) :
+                    new Record<>(line(start), value, null);
+        } catch (JsonProcessingException e) {
+            log.debug("Malformed reading [{}]", e.getOriginalMessage());
+            return skipLine(start != null ? start : location(e), MALFORMED);
+        } catch (RecordTooLongException e) {
+            return skipLine(start != null ? start : parser.getCurrentLocation(), TOO_LONG);
+        }
+    }
+
+    private Record<T> skipLine(JsonLocation location, String error) throws IOException {
+        int line = line(location);
+        input.skipLine(parserStart + location.getByteOffset() - (location.getColumnNr() - 1));
+
+        parser.close();
+        parser = createParser();
+        parserLine = line + 1;
+
+        return new Record<>(line, null, error);
+    }
+
+    private JsonLocation location(JsonProcessingException e) {
+        return e.getLocation() != null ? e.getLocation() : parser.getCurrentLocation();
+    }
+
+    private int line(JsonLocation location) {
+        return parserLine + location.getLineNr() - 1;
+    }
+
+    private JsonParser createParser() throws IOException {
+        parserStart = input.position;
+        input.startRecord(parserStart);
+        return reader.getFactory()
+                .createParser(input)
+                .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    static final class Record<T> {
+
+        final int line;
+        final T value;
+        final String error;
+
+        private Record(int line, T value, String error) {
+            this.line = line;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    private static final class RecordTooLongException extends IOException {}
+
+    /**
+     * The body as the parsers see it, capped per record and replayable back to the record start
+     */
+    private static final class RecordInput extends InputStream {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private final InputStream body;
+        private final int maxRecordBytes;
+        private final byte[] ring;
+        private final int mask;
+
+        private long position;
+        private long limit;
+
+        private byte[] replay = EMPTY;
+        private int replayed;
+
+        RecordInput(InputStream body, int maxRecordBytes) {
+            this.body = body;
+            this.maxRecordBytes = maxRecordBytes;
+            this.ring = new byte[Integer.highestOneBit(Math.max(maxRecordBytes - 1, 1)) << 1];
+            this.mask = ring.length - 1;
+        }
+
+        void startRecord(long start) {
+            limit = start + maxRecordBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (position >= limit)
+                throw new RecordTooLongException();
+
+            len = (int) Math.min(len, limit - position);
+            int n;
+            if (replayed < replay.length) {
+                n = Math.min(len, replay.length - replayed);
+                System.arraycopy(replay, replayed, b, off, n);
+                replayed += n;
+            } else if ((n = body.read(b, off, len)) < 0)
+                return -1;
+
+            int at = (int) position & mask;
+            int wrapped = Math.max(at + n - ring.length, 0);
+            System.arraycopy(b, off, ring, at, n - wrapped);
+            System.arraycopy(b, off + n - wrapped, ring, 0, wrapped);
+            position += n;
+            return n;
+        }
+
+        /**
+         * Drops everything up to and including the first newline from {@code from} on
+         */
+        void skipLine(long from) throws IOException {
+            for (long p = Math.max(from, position - ring.length); p < position; p++)
+                if (ring[(int) p & mask] == '\n') {
+                    replayFrom(p + 1);
+                    return;
+                }
+
+            // The parsers have not been given the end of the line yet, so it is read past here
+            while (replayed < replay.length)
+                if (replay[replayed++] == '\n')
+                    return;
+
+            byte[] chunk = new byte[4096];
+            for (int n; (n = body.read(chunk, 0, chunk.length)) > 0; )
+                for (int i = 0; i < n; i++)
+                    if (chunk[i] == '\n') {
+                        replay = Arrays.copyOfRange(chunk, i + 1, n);
+                        replayed = 0;
+                        return;
+                    }
+        }
+
+        // Hands the bytes after the newline out again, ahead of whatever was still to be replayed
+        private void replayFrom(long from) {
+            int recorded = (int) (position - from);
+            byte[] pending = new byte[recorded + replay.length - replayed];
+            for (int i = 0; i < recorded; i++)
+                pending[i] = ring[(int) (from + i) & mask];
+            System.arraycopy(replay, replayed, pending, recorded, replay.length - replayed);
+
+            replay = pending;
+            replayed = 0;
+        }
+    }
+}
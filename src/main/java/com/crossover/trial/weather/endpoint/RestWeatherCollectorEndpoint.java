@@ -22,14 +22,22 @@
  */
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.cache.WeatherResponseCache;
 import com.crossover.trial.weather.domain.*;
+import com.crossover.trial.weather.ingest.CoalescingIngestion;
+import com.crossover.trial.weather.ingest.SequenceHighWaterMarks;
+import com.crossover.trial.weather.ingest.WriteBehindIngestion;
+import com.crossover.trial.weather.spatial.AirportIndex;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.ApiModelProperty;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
@@ -37,12 +45,18 @@ import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import static com.crossover.trial.weather.ingest.SequenceHighWaterMarks.DUPLICATE;
+import static com.crossover.trial.weather.util.TransactionHooks.afterCommit;
+import static com.crossover.trial.weather.util.TransactionHooks.afterRollback;
 import static com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility.ANY;
 import static org.springframework.http.ResponseEntity.badRequest;
 import static org.springframework.http.ResponseEntity.ok;
@@ -55,52 +69,248 @@ public class RestWeatherCollectorEndpoint {
 
     @Autowired AirportRepository airportRepository;
     @Autowired DataPointRepository dataPointRepository;
+    @Autowired AirportIndex airportIndex;
+    @Autowired WeatherResponseCache responseCache;
+    @Autowired WriteBehindIngestion ingestion;
+    @Autowired CoalescingIngestion coalescer;
+    @Autowired SequenceHighWaterMarks highWaterMarks;
+    @Autowired ObjectMapper objectMapper;
+
+    @Value("${weather.ingest.stream.batch-size:500}") int streamBatchSize;
+    @Value("${weather.ingest.stream.max-record-bytes:16384}") int streamMaxRecordBytes;
 
     @RequestMapping(path="/collect/weather/{iata}/{pointType}", method=POST,
         consumes="application/json")
     @ApiResponses({
             @ApiResponse(code=200, message="OK"),
-            @ApiResponse(code=400, message="Bad Request")
+            @ApiResponse(code=202, message="Accepted"),
+            @ApiResponse(code=400, message="Bad Request"),
+            @ApiResponse(code=429, message="Too Many Requests"),
+            @ApiResponse(code=503, message="Service Unavailable")
     })
     public ResponseEntity<Void> updateWeather(@PathVariable("iata") IATA iata,
                                         @PathVariable("pointType") DataPointType pointType,
+                                        @RequestParam(name="async", defaultValue="false") boolean async,
+                                        @RequestParam(name="coalesce", defaultValue="false") boolean coalesce,
                                         @RequestBody Data data) {
 
         Assert.isTrue(iata != null);
         Assert.isTrue(pointType != null);
         Assert.isTrue(data != null);
 
+        if (async || coalesce)
+            return updateWeatherBehind(iata, pointType, data, coalesce);
+
         Airport airport = airportRepository.findOne(iata);
         if (airport == null)
             return badRequest()
                     .build();
 
         DataPoint dataPoint = createDataPoint(data, pointType);
-        if (dataPoint == null)
+        if (dataPoint == null || !isValidSequence(data.sequence))
             return badRequest()
                     .build();
 
-        Measurement measurement = updateWeather(airport, dataPoint);
+        long previous = claim(iata, pointType, data.sequence);
+        if (previous == DUPLICATE)
+            return acknowledgeDuplicate(iata, pointType, data.sequence, HttpStatus.OK);
+
+        Measurement measurement;
+        try {
+            measurement = updateWeather(airport, dataPoint);
+        } catch (RuntimeException e) {
+            release(iata, pointType, data.sequence, previous);
+            throw e;
+        }
+
+        if (measurement == null) {
+            release(iata, pointType, data.sequence, previous);
+            return badRequest().build();
+        }
 
-        return measurement == null ?
-            badRequest().build() :
-            ok().build();
+        commit(iata, pointType, data.sequence);
+        return ok().build();
     }
 
-    private DataPoint createDataPoint(Data pointDTO, DataPointType pointType) {
+    @RequestMapping(path="/collect/weather/batch", method=POST,
+        consumes="application/json", produces="application/json")
+    @ApiResponses({
+            @ApiResponse(code=200, message="OK"),
+            @ApiResponse(code=400, message="Bad Request")
+    })
+    public ResponseEntity<List<Result>> updateWeather(@RequestBody List<Reading> readings) {
+        if (readings == null)
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        return ok(updateWeatherInBatch(readings));
+    }
+
+    // One transaction for the whole batch, so Hibernate can group the inserts in JDBC batches
+    @Transactional
+    protected List<Result> updateWeatherInBatch(List<Reading> readings) {
+        Map<IATA, Airport> airports = new HashMap<>();
+        return readings.stream()
+                .map(reading -> updateWeather(reading, airports))
+                .collect(Collectors.toList());
+    }
+
+    @RequestMapping(path="/collect/weather/stream", method=POST,
+        consumes="application/x-ndjson", produces="application/json")
+    @ApiResponses({
+            @ApiResponse(code=200, message="OK"),
+            @ApiResponse(code=400, message="Bad Request")
+    })
+    public ResponseEntity<StreamReport> updateWeather(InputStream body) throws IOException {
+        StreamReport report = new StreamReport();
+        List<NdjsonReader.Record<Reading>> batch = new ArrayList<>(streamBatchSize);
+
+        // Records are bound one by one as they arrive, so a bad one is rejected without ending the replay
+        NdjsonReader<Reading> reader = new NdjsonReader<>(objectMapper, Reading.class, body, streamMaxRecordBytes);
+        for (NdjsonReader.Record<Reading> record; (record = reader.next()) != null; ) {
+            batch.add(record);
+            if (batch.size() == streamBatchSize)
+                updateWeatherInBatch(batch, report);
+        }
+        updateWeatherInBatch(batch, report);
+
+        return ok(report);
+    }
+
+    private void updateWeatherInBatch(List<NdjsonReader.Record<Reading>> batch, StreamReport report) {
+        if (batch.isEmpty())
+            return;
+
+        // Records the reader could not bind are rejected in place
+        List<Reading> readings = batch.stream()
+                .filter(record -> record.value != null)
+                .map(record -> record.value)
+                .collect(Collectors.toList());
+        Iterator<Result> results = readings.isEmpty() ?
+                Collections.emptyIterator() :
+                updateWeatherInBatch(readings).iterator();
+        for (NdjsonReader.Record<Reading> record : batch)
+            report.add(record.line, record.value == null ?
+                    Result.rejected(null, record.error) :
+                    results.next());
+        report.batches++;
+
+        batch.clear();
+    }
+
+    private Result updateWeather(Reading reading, Map<IATA, Airport> airports) {
+        if (reading == null)
+            return Result.rejected(null, "reading is required");
+        if (reading.iata == null || !reading.iata.matches("[a-zA-Z]{3}"))
+            return Result.rejected(reading, "iata must be a 3-letter code");
+
+        DataPointType pointType;
         try {
-            return new DataPoint.Builder()
-                    .withMean(pointDTO.mean)
-                    .withFirst(pointDTO.first)
-                    .withSecond(pointDTO.second)
-                    .withThird(pointDTO.third)
-                    .withCount(pointDTO.count)
-                    .withType(pointType)
+            pointType = DataPointType.valueOf(String.valueOf(reading.pointType).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Result.rejected(reading, "unknown point type");
+        }
+
+        Airport airport = airports.computeIfAbsent(IATA.valueOf(reading.iata), airportRepository::findOne);
+        if (airport == null)
+            return Result.rejected(reading, "unknown airport");
+
+        DataPoint dataPoint = createDataPoint(reading, pointType);
+        if (dataPoint == null)
+            return Result.rejected(reading, "invalid data point");
+        if (!dataPoint.isInsideRange())
+            return Result.rejected(reading, "mean is out of range");
+        Long sequence = ((Data) reading).sequence;
+        if (!isValidSequence(sequence))
+            return Result.rejected(reading, "sequence must not be negative");
+
+        IATA iata = airport.getIata();
+        long previous = claim(iata, pointType, sequence);
+        if (previous == DUPLICATE)
+            return highWaterMarks.isCommitted(iata, pointType, sequence) ?
+                    Result.duplicate(reading) :
+                    Result.rejected(reading, "sequence in flight");
+        afterRollback(() -> release(iata, pointType, sequence, previous));
+        afterCommit(() -> commit(iata, pointType, sequence));
+
+        dataPointRepository.createMeasurement(airport, dataPoint);
+
+        return Result.accepted(reading);
+    }
+
+    private ResponseEntity<Void> updateWeatherBehind(IATA iata, DataPointType pointType, Data data, boolean coalesce) {
+        Airport airport = airportIndex.find(iata);
+        if (airport == null)
+            return badRequest()
                     .build();
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
+
+        DataPoint dataPoint = createDataPoint(data, pointType);
+        if (dataPoint == null || !dataPoint.isInsideRange() || !isValidSequence(data.sequence))
+            return badRequest()
+                    .build();
+
+        long previous = claim(iata, pointType, data.sequence);
+        if (previous == DUPLICATE)
+            return acknowledgeDuplicate(iata, pointType, data.sequence, HttpStatus.ACCEPTED);
+
+        boolean offered = coalesce ?
+            coalescer.offer(airport, dataPoint) :
+            ingestion.offer(airport, dataPoint);
+        if (!offered) {
+            release(iata, pointType, data.sequence, previous);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+
+        // Handed over to the write-behind pipeline, which is all a 202 promises
+        commit(iata, pointType, data.sequence);
+        return ResponseEntity.accepted().build();
+    }
+
+    // A retry gets the answer of the reading it repeats, once that one can no longer roll back
+    private ResponseEntity<Void> acknowledgeDuplicate(IATA iata, DataPointType pointType, long sequence,
+                                                      HttpStatus status) {
+        if (highWaterMarks.isCommitted(iata, pointType, sequence))
+            return ResponseEntity.status(status).build();
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .build();
+    }
+
+    private static boolean isValidSequence(Long sequence) {
+        return sequence == null || sequence >= 0;
+    }
+
+    // Readings without a sequence are never treated as duplicates
+    private long claim(IATA iata, DataPointType pointType, Long sequence) {
+        return sequence == null ? 0 : highWaterMarks.claim(iata, pointType, sequence);
+    }
+
+    private void release(IATA iata, DataPointType pointType, Long sequence, long previous) {
+        if (sequence != null)
+            highWaterMarks.release(iata, pointType, sequence, previous);
+    }
+
+    private void commit(IATA iata, DataPointType pointType, Long sequence) {
+        if (sequence != null)
+            highWaterMarks.commit(iata, pointType, sequence);
+    }
+
+    // Missing fields are an ordinary client error, answered without a stack trace
+    private static DataPoint createDataPoint(Data pointDTO, DataPointType pointType) {
+        if (pointDTO.mean == null || pointDTO.first == null || pointDTO.second == null ||
+                pointDTO.third == null || pointDTO.count == null) {
+            log.debug("Incomplete {} reading rejected", pointType);
             return null;
         }
+
+        return new DataPoint.Builder()
+                .withMean(pointDTO.mean)
+                .withFirst(pointDTO.first)
+                .withSecond(pointDTO.second)
+                .withThird(pointDTO.third)
+                .withCount(pointDTO.count)
+                .withType(pointType)
+                .build();
     }
 
     @Transactional
@@ -147,12 +357,16 @@ public class RestWeatherCollectorEndpoint {
             @PathVariable("long") double longitude) {
         Assert.isTrue(iata != null);
 
+        Airport airport = airportRepository.save(new Airport.Builder()
+                .withIata(iata)
+                .withLatitude(latitude)
+                .withLongitude(longitude)
+                    .build());
+        airportIndex.put(airport);
+        responseCache.invalidateAll();
+
         return ResponseEntity.status(HttpStatus.CREATED)
-                .body(airportRepository.save(new Airport.Builder()
-                    .withIata(iata)
-                    .withLatitude(latitude)
-                    .withLongitude(longitude)
-                        .build()));
+                .body(airport);
     }
 
     @Transactional
@@ -170,6 +384,10 @@ public class RestWeatherCollectorEndpoint {
 
         dataPointRepository.deleteAllMeasurements(iata);
         airportRepository.delete(iata);
+        afterCommit(() -> {
+            airportIndex.remove(iata);
+            responseCache.invalidateAll();
+        });
 
         return ResponseEntity.noContent()
                 .build();
@@ -195,5 +413,90 @@ public class RestWeatherCollectorEndpoint {
 
         @ApiModelProperty(required=true)
         private Integer count;
+
+        @ApiModelProperty("Increases monotonically per airport and point type, so retries can be dropped")
+        private Long sequence;
+    }
+
+    @JsonAutoDetect(fieldVisibility=ANY)
+    private static class Reading extends Data {
+
+        @ApiModelProperty(required=true)
+        private String iata;
+
+        @ApiModelProperty(required=true)
+        private String pointType;
+    }
+
+    @JsonAutoDetect(fieldVisibility=ANY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Result {
+
+        private final String iata;
+        private final String pointType;
+        private final boolean accepted;
+        private final Boolean duplicate;
+        private final String error;
+
+        private Result(Reading reading, boolean accepted, Boolean duplicate, String error) {
+            this.iata = reading == null ? null : reading.iata;
+            this.pointType = reading == null ? null : reading.pointType;
+            this.accepted = accepted;
+            this.duplicate = duplicate;
+            this.error = error;
+        }
+
+        static Result accepted(Reading reading) {
+            return new Result(reading, true, null, null);
+        }
+
+        // Acknowledged like the stored reading it repeats, so the collector stops retrying it
+        static Result duplicate(Reading reading) {
+            return new Result(reading, true, true, null);
+        }
+
+        static Result rejected(Reading reading, String error) {
+            return new Result(reading, false, null, error);
+        }
+    }
+
+    @JsonAutoDetect(fieldVisibility=ANY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class StreamReport {
+
+        // Keeps the report small when a replay is mostly garbage
+        private static final int MAX_REJECTIONS = 1000;
+
+        private long accepted;
+        private long rejected;
+        private int batches;
+        private final List<Rejection> rejections = new ArrayList<>();
+
+        void add(int line, Result result) {
+            if (result.accepted)
+                accepted++;
+            else {
+                rejected++;
+                if (rejections.size() < MAX_REJECTIONS)
+                    rejections.add(new Rejection(line, result));
+            }
+        }
+    }
+
+    @JsonAutoDetect(fieldVisibility=ANY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Rejection {
+
+        private final int line;
+        private final String iata;
+        private final String pointType;
+        private final String error;
+
+        Rejection(int line, Result result) {
+            this.line = line;
+            this.iata = result.iata;
+            this.pointType = result.pointType;
+            this.error = result.error;
+        }
     }
 }
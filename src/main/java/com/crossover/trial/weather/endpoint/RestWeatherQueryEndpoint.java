@@ -22,7 +22,9 @@
  */
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.cache.WeatherResponseCache;
 import com.crossover.trial.weather.domain.*;
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
 import com.crossover.trial.weather.metrics.MetricsReport;
 import com.crossover.trial.weather.metrics.MetricsService;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
@@ -31,42 +33,104 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.eclipse.core.runtime.Assert;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import static com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility.ANY;
+import static org.springframework.http.ResponseEntity.ok;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 @RestController
 public class RestWeatherQueryEndpoint {
 
     @Autowired AirportRepository airportRepository;
-    @Autowired DataPointRepository dataPointRepository;
+    @Autowired LatestMeasurementStore latestMeasurements;
+    @Autowired WeatherResponseCache responseCache;
 
     @Autowired MetricsService<?, ?> metricsService;
 
     @RequestMapping(path="/query/weather/{iata}/{radius}", method=GET,
         produces="application/json")
     @ApiResponses({
-            @ApiResponse(code=200, message="OK"),
+            @ApiResponse(code=200, message="OK", response=Data.class, responseContainer="List"),
             @ApiResponse(code=400, message="Bad Request")
     })
-    public List<Data> findInRange(@PathVariable("iata") IATA iata,
-                                  @PathVariable("radius") double radius) {
+    public ResponseEntity<byte[]> findInRange(@PathVariable("iata") IATA iata,
+                                              @PathVariable("radius") double radius) {
 
         Assert.isTrue(iata != null);
 
         metricsService.markRequest(iata, radius);
 
-        return StreamSupport.stream(airportRepository
-                .findInRadius(iata, radius).spliterator(), false)
-                .map(dataPointRepository::findLatestMeasurementForIata)
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(responseCache.find(iata, radius,
+                        () -> new ArrayList<>(airportRepository.findInRadius(iata, radius)),
+                        this::latestWeather));
+    }
+
+    // One read-only transaction, so every range is answered from the same snapshot
+    @Transactional(readOnly=true)
+    @RequestMapping(path="/query/weather", method=POST,
+        consumes="application/json", produces="application/json")
+    @ApiResponses({
+            @ApiResponse(code=200, message="OK"),
+            @ApiResponse(code=400, message="Bad Request")
+    })
+    public ResponseEntity<List<Neighbourhood>> findInRanges(@RequestBody List<Range> ranges) {
+
+        if (ranges == null || !ranges.stream().allMatch(Range::isValid))
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        // Repeated ranges are resolved once
+        Map<String, List<Airport>> airportsInRange = new LinkedHashMap<>();
+        for (Range range : ranges) {
+            IATA iata = IATA.valueOf(range.iata);
+            metricsService.markRequest(iata, range.radius);
+            airportsInRange.computeIfAbsent(iata + "/" + range.radius, key ->
+                    new ArrayList<>(airportRepository.findInRadius(iata, range.radius)));
+        }
+
+        return ok(ranges.stream()
+                .map(range -> {
+                    IATA iata = IATA.valueOf(range.iata);
+                    return new Neighbourhood(iata, range.radius,
+                            latestWeather(airportsInRange.get(iata + "/" + range.radius)));
+                })
+                .collect(Collectors.toList()));
+    }
+
+    @RequestMapping(path="/query/weather/{iata}/nearest/{k}", method=GET,
+        produces="application/json")
+    @ApiResponses({
+            @ApiResponse(code=200, message="OK"),
+            @ApiResponse(code=400, message="Bad Request")
+    })
+    public ResponseEntity<List<Data>> findNearest(@PathVariable("iata") IATA iata,
+                                                  @PathVariable("k") int k) {
+
+        Assert.isTrue(iata != null);
+        if (k <= 0)
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        return ok(latestWeather(airportRepository.findNearest(iata, k)));
+    }
+
+    private List<Data> latestWeather(Iterable<Airport> airports) {
+        return StreamSupport.stream(airports.spliterator(), false)
+                .map(airport -> latestMeasurements.findLatest(airport.getIata()))
                 .filter(measurement -> measurement != null)
                 .map(Data::new)
                 .collect(Collectors.toList());
@@ -95,4 +159,33 @@ public class RestWeatherQueryEndpoint {
                     .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
         }
     }
+
+    @JsonAutoDetect(fieldVisibility=ANY)
+    private static class Range {
+
+        @ApiModelProperty(required=true)
+        private String iata;
+
+        @ApiModelProperty(required=true)
+        private Double radius;
+
+        boolean isValid() {
+            return iata != null && iata.matches("[a-zA-Z]{3}") &&
+                   radius != null && radius > 0;
+        }
+    }
+
+    @JsonAutoDetect(fieldVisibility=ANY)
+    static class Neighbourhood {
+
+        private final IATA iata;
+        private final double radius;
+        private final List<Data> weather;
+
+        Neighbourhood(IATA iata, double radius, List<Data> weather) {
+            this.iata = iata;
+            this.radius = radius;
+            this.weather = weather;
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.IATA;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ *  Admission Control
+ *
+ *  Token buckets for ingestion, one per airport plus a global one, kept as a single
+ *  theoretical arrival time per bucket (GCRA) in a flat {@link AtomicLongArray} indexed by
+ *  airport. Taking a token is one compare-and-set, so a station flooding its airport is shed
+ *  without slowing down writers of other airports. A rate of zero disables a budget.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final int GLOBAL = IATA.CARDINALITY;
+
+    @Value("${weather.ingest.limit.airport.rate:50}") double airportRate;
+    @Value("${weather.ingest.limit.airport.burst:100}") int airportBurst;
+    @Value("${weather.ingest.limit.global.rate:5000}") double globalRate;
+    @Value("${weather.ingest.limit.global.burst:10000}") int globalBurst;
+
+    LongSupplier clock = System::nanoTime;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(IATA.CARDINALITY + 1);
+
+    private long airportInterval;
+    private long airportTolerance;
+    private long globalInterval;
+    private long globalTolerance;
+    private long origin;
+
+    @PostConstruct
+    public void init() {
+        airportInterval = interval(airportRate);
+        airportTolerance = airportInterval * Math.max(0, airportBurst - 1);
+        globalInterval = interval(globalRate);
+        globalTolerance = globalInterval * Math.max(0, globalBurst - 1);
+        // Keeps times positive, the buckets start out full
+        origin = clock.getAsLong();
+    }
+
+    /**
+     * Takes a token from the airport, when given, and from the global budget, or none of them
+     */
+    public boolean tryAcquire(IATA iata) {
+        long now = clock.getAsLong() - origin;
+        if (iata != null && !take(iata.toIndex(), now, airportInterval, airportTolerance))
+            return false;
+
+        if (!take(GLOBAL, now, globalInterval, globalTolerance)) {
+            if (iata != null && airportInterval > 0)
+                buckets.addAndGet(iata.toIndex(), -airportInterval);
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean take(int slot, long now, long interval, long tolerance) {
+        if (interval == 0)
+            return true;
+
+        while (true) {
+            long arrival = buckets.get(slot);
+            long earliest = Math.max(arrival, now);
+            if (earliest - now > tolerance)
+                return false;
+            if (buckets.compareAndSet(slot, arrival, earliest + interval))
+                return true;
+        }
+    }
+
+    private static long interval(double rate) {
+        return rate <= 0 ? 0 : Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+    }
+}
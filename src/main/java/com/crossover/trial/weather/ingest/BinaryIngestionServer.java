@@ -0,0 +1,242 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.AirportIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ *  Binary Ingestion Server
+ *
+ *  Non-blocking TCP listener for devices that speak a fixed binary frame instead of JSON.
+ *  Every {@link #RECORD_SIZE} byte record, in network byte order, holds the IATA index as a
+ *  short, the {@link DataPointType} ordinal as a byte, the mean as a double and first, second,
+ *  third and count as ints. Records are decoded straight from a per-connection direct buffer
+ *  into {@link WriteBehindIngestion} and each one is answered with a single status byte.
+ *  Records over the {@link AdmissionControl} budget are answered busy.
+ *  Only started when weather.ingest.binary.port is set.
+ */
+@Component
+@ConditionalOnProperty(name="weather.ingest.binary.port")
+public class BinaryIngestionServer {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryIngestionServer.class);
+
+    public static final int RECORD_SIZE = 2 + 1 + 8 + 4 * 4;
+
+    public static final byte ACCEPTED = 0;
+    public static final byte REJECTED = 1;
+    public static final byte BUSY = 2;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    @Value("${weather.ingest.binary.port:0}") int port;
+    @Value("${weather.ingest.binary.records-per-read:512}") int recordsPerRead;
+
+    @Autowired AirportIndex airportIndex;
+    @Autowired WriteBehindIngestion ingestion;
+    @Autowired AdmissionControl admissionControl;
+
+    // Codes are decoded once per index, records then only cost the data point itself
+    private final IATA[] codes = new IATA[IATA.CARDINALITY];
+
+    private ServerSocketChannel server;
+    private Selector selector;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        acceptor = new Thread(this::serve, "weather-binary-ingest");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        log.info("Binary ingestion listening on port {}", getLocalPort());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        selector.wakeup();
+        acceptor.join();
+
+        for (SelectionKey key : selector.keys())
+            key.channel().close();
+        selector.close();
+    }
+
+    public int getLocalPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void serve() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("Selector failed, binary ingestion stops", e);
+                return;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (key.isAcceptable())
+                        accept();
+                    else if (key.isReadable())
+                        read(key);
+                    else if (key.isWritable())
+                        write(key);
+                } catch (IOException e) {
+                    log.debug("Closing binary connection: {}", e.getMessage());
+                    close(key);
+                } catch (RuntimeException e) {
+                    // A failing record only costs its own connection, the selector thread serves on
+                    log.error("Closing binary connection after a failed record", e);
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null)
+            return;
+
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(recordsPerRead));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.in) < 0) {
+            close(key);
+            return;
+        }
+
+        // A record split across reads stays in the buffer until the rest arrives
+        connection.in.flip();
+        while (connection.in.remaining() >= RECORD_SIZE)
+            connection.out.put(ingest(connection.in));
+        connection.in.compact();
+
+        write(key);
+    }
+
+    // Stops reading while statuses are pending, so the status buffer always has room for a full read
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        connection.out.flip();
+        ((SocketChannel) key.channel()).write(connection.out);
+        connection.out.compact();
+
+        key.interestOps(connection.out.position() == 0 ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+    }
+
+    private byte ingest(ByteBuffer record) {
+        int index = record.getShort() & 0xFFFF;
+        int ordinal = record.get();
+        double mean = record.getDouble();
+        int first = record.getInt();
+        int second = record.getInt();
+        int third = record.getInt();
+        int count = record.getInt();
+
+        if (index >= IATA.CARDINALITY || ordinal < 0 || ordinal >= TYPES.length)
+            return REJECTED;
+
+        IATA iata = codes[index];
+        if (iata == null)
+            codes[index] = iata = IATA.fromIndex(index);
+
+        if (!admissionControl.tryAcquire(iata))
+            return BUSY;
+
+        Airport airport = airportIndex.find(iata);
+        if (airport == null)
+            return REJECTED;
+
+        DataPoint dataPoint = new DataPoint.Builder()
+                .withType(TYPES[ordinal])
+                .withMean(mean)
+                .withFirst(first)
+                .withSecond(second)
+                .withThird(third)
+                .withCount(count)
+                .build();
+        if (!dataPoint.isInsideRange())
+            return REJECTED;
+
+        return ingestion.offer(airport, dataPoint) ? ACCEPTED : BUSY;
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("Failed to close binary connection: {}", e.getMessage());
+        }
+    }
+
+    private static class Connection {
+
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+
+        Connection(int records) {
+            this.in = ByteBuffer.allocateDirect(records * RECORD_SIZE);
+            this.out = ByteBuffer.allocateDirect(records);
+        }
+    }
+}
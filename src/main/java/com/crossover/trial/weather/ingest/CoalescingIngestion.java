@@ -0,0 +1,231 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BinaryOperator;
+
+/**
+ *  Coalescing Ingestion
+ *
+ *  Folds readings of the same airport and data point type that arrive within the window into
+ *  one pending data point, either keeping the latest or merging them weighted by count. When
+ *  the window closes the result is handed to {@link WriteBehindIngestion}, so a station that
+ *  reports every few milliseconds costs one insert per window. Open windows wait in a
+ *  {@link DelayQueue}, so the flusher sleeps until the next one closes. Pending points are
+ *  flushed on shutdown.
+ */
+@Component
+public class CoalescingIngestion {
+
+    private static final Logger log = LoggerFactory.getLogger(CoalescingIngestion.class);
+
+    private static final int TYPES = DataPointType.values().length;
+    private static final int CLOSED = -1;
+
+    @Value("${weather.ingest.coalesce.window:1000}") long windowInMillis;
+    @Value("${weather.ingest.coalesce.merge:latest}") String merge;
+
+    @Autowired WriteBehindIngestion ingestion;
+
+    private final AtomicReferenceArray<Pending> pending = new AtomicReferenceArray<>(IATA.CARDINALITY * TYPES);
+    private final DelayQueue<Window> windows = new DelayQueue<>();
+
+    private BinaryOperator<Pending> merger;
+    Thread flusher;
+    private final AtomicInteger offering = new AtomicInteger();
+    private volatile boolean running;
+    private volatile Thread stopping;
+
+    @PostConstruct
+    public void start() {
+        Assert.isTrue("latest".equals(merge) || "weighted".equals(merge),
+                "weather.ingest.coalesce.merge must be latest or weighted");
+
+        merger = "latest".equals(merge) ? CoalescingIngestion::latest : CoalescingIngestion::weighted;
+        running = true;
+
+        flusher = new Thread(this::flush, "weather-coalescer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = Thread.currentThread();
+        running = false;
+        // An offer that saw the pipeline running still gets its window before the last flush
+        while (offering.get() > 0)
+            LockSupport.park(this);
+        windows.add(new Window(CLOSED, System.nanoTime()));
+        flusher.join();
+    }
+
+    /**
+     * Returns false when the pipeline is shutting down
+     */
+    public boolean offer(Airport airport, DataPoint dataPoint) {
+        Assert.isTrue(airport != null, "airport is required");
+        Assert.isTrue(dataPoint != null, "dataPoint is required");
+
+        offering.incrementAndGet();
+        try {
+            if (!running)
+                return false;
+
+            int slot = airport.getIata().toIndex() * TYPES + dataPoint.getType().ordinal();
+            Pending previous = pending.getAndAccumulate(slot, new Pending(airport, dataPoint), this::fold);
+            // The first reading of a slot opens its window
+            if (previous == null)
+                windows.add(new Window(slot, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowInMillis)));
+
+            return true;
+        } finally {
+            // The last offer to leave wakes a waiting stop
+            if (offering.decrementAndGet() == 0 && !running)
+                LockSupport.unpark(stopping);
+        }
+    }
+
+    private Pending fold(Pending older, Pending newer) {
+        return older == null ? newer : merger.apply(older, newer);
+    }
+
+    private void flush() {
+        while (true) {
+            Window window;
+            try {
+                window = windows.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (window.slot == CLOSED)
+                break;
+
+            flush(window);
+        }
+
+        // Shutting down, so what is still open is flushed without waiting for its window to close
+        List<Window> open = new ArrayList<>(windows);
+        windows.clear();
+        open.forEach(this::flush);
+    }
+
+    private void flush(Window window) {
+        Pending closed = pending.getAndSet(window.slot, null);
+        if (closed != null && !ingestion.offer(closed.airport, closed.dataPoint))
+            // Write behind is full, so the point waits for another window, folded under anything newer
+            requeue(window.slot, closed);
+    }
+
+    private void requeue(int slot, Pending closed) {
+        if (!running) {
+            log.warn("Dropping coalesced data point for {}, write behind is full", closed.airport.getIata());
+            return;
+        }
+
+        Pending previous = pending.getAndAccumulate(slot, closed,
+                (current, older) -> current == null ? older : merger.apply(older, current));
+        if (previous == null)
+            windows.add(new Window(slot, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowInMillis)));
+    }
+
+    static Pending latest(Pending older, Pending newer) {
+        return newer;
+    }
+
+    static Pending weighted(Pending older, Pending newer) {
+        long count = (long) older.dataPoint.getCount() + newer.dataPoint.getCount();
+        if (count == 0)
+            return newer;
+
+        return new Pending(newer.airport, new DataPoint.Builder()
+                .withType(newer.dataPoint.getType())
+                .withMean((older.dataPoint.getMean() * older.dataPoint.getCount() +
+                        newer.dataPoint.getMean() * newer.dataPoint.getCount()) / count)
+                .withFirst(weighted(older.dataPoint.getFirst(), older.dataPoint.getCount(),
+                        newer.dataPoint.getFirst(), newer.dataPoint.getCount()))
+                .withSecond(weighted(older.dataPoint.getSecond(), older.dataPoint.getCount(),
+                        newer.dataPoint.getSecond(), newer.dataPoint.getCount()))
+                .withThird(weighted(older.dataPoint.getThird(), older.dataPoint.getCount(),
+                        newer.dataPoint.getThird(), newer.dataPoint.getCount()))
+                .withCount((int) Math.min(count, Integer.MAX_VALUE))
+                .build());
+    }
+
+    private static int weighted(int older, int olderCount, int newer, int newerCount) {
+        return (int) Math.round(((double) older * olderCount + (double) newer * newerCount) / ((long) olderCount + newerCount));
+    }
+
+    static class Pending {
+
+        final Airport airport;
+        final DataPoint dataPoint;
+
+        Pending(Airport airport, DataPoint dataPoint) {
+            this.airport = airport;
+            this.dataPoint = dataPoint;
+        }
+    }
+
+    private static class Window implements Delayed {
+
+        private final int slot;
+        private final long deadline;
+
+        Window(int slot, long deadline) {
+            this.slot = slot;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.signum(deadline - ((Window) other).deadline);
+        }
+    }
+}
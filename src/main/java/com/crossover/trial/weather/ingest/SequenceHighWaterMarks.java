@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Sequence High Water Marks
+ *
+ *  Highest client sequence number accepted so far for every airport and data point type,
+ *  kept in a flat array addressed by the dense {@link IATA} index. A reading is only claimed
+ *  when its sequence is above the mark, so retries and stale replays are dropped without
+ *  asking the database. A second mark follows the claims whose reading is stored, so a retry
+ *  is only acknowledged once what it repeats can no longer roll back. Marks live in memory
+ *  only and start over on restart.
+ */
+@Component
+public class SequenceHighWaterMarks {
+
+    public static final long DUPLICATE = Long.MIN_VALUE;
+
+    private static final int TYPES = DataPointType.values().length;
+    private static final long NONE = -1;
+
+    private final AtomicLongArray marks = new AtomicLongArray(IATA.CARDINALITY * TYPES);
+    private final AtomicLongArray committed = new AtomicLongArray(IATA.CARDINALITY * TYPES);
+
+    public SequenceHighWaterMarks() {
+        clear();
+    }
+
+    /**
+     * Advances the mark to the given sequence, returning the previous mark or {@link #DUPLICATE}
+     * when the sequence was already seen
+     */
+    public long claim(IATA iata, DataPointType type, long sequence) {
+        Assert.isTrue(iata != null, "iata is required");
+        Assert.isTrue(type != null, "type is required");
+        Assert.isTrue(sequence >= 0, "sequence must not be negative");
+
+        int slot = slot(iata, type);
+        while (true) {
+            long mark = marks.get(slot);
+            if (sequence <= mark)
+                return DUPLICATE;
+            if (marks.compareAndSet(slot, mark, sequence))
+                return mark;
+        }
+    }
+
+    /**
+     * Gives a claim back when the reading didn't make it, unless a newer one got in since
+     */
+    public void release(IATA iata, DataPointType type, long sequence, long previous) {
+        marks.compareAndSet(slot(iata, type), sequence, previous);
+    }
+
+    /**
+     * Records that the reading of a claim is stored
+     */
+    public void commit(IATA iata, DataPointType type, long sequence) {
+        int slot = slot(iata, type);
+        while (true) {
+            long mark = committed.get(slot);
+            if (sequence <= mark || committed.compareAndSet(slot, mark, sequence))
+                return;
+        }
+    }
+
+    /**
+     * Whether a duplicate sequence is settled, false while a claim at or above it may still be
+     * given back
+     */
+    public boolean isCommitted(IATA iata, DataPointType type, long sequence) {
+        return sequence <= committed.get(slot(iata, type));
+    }
+
+    public void clear() {
+        for (int slot = 0; slot < marks.length(); slot++) {
+            marks.set(slot, NONE);
+            committed.set(slot, NONE);
+        }
+    }
+
+    private static int slot(IATA iata, DataPointType type) {
+        return iata.toIndex() * TYPES + type.ordinal();
+    }
+}
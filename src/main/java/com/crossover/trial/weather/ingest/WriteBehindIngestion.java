@@ -0,0 +1,208 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  Write Behind Ingestion
+ *
+ *  Accepts already validated data points into a bounded {@link RingBuffer} and lets a single
+ *  drainer thread persist them, grouping up to batch-size points, or whatever arrived within
+ *  the linger time, in one transaction. A full buffer is reported back so callers can apply
+ *  backpressure. The drainer parks while the buffer is empty and an offer unparks it, so an
+ *  idle pipeline costs no CPU. On shutdown it stops accepting and drains what is left.
+ */
+@Component
+public class WriteBehindIngestion {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindIngestion.class);
+
+    @Value("${weather.ingest.buffer-size:8192}") int bufferSize;
+    @Value("${weather.ingest.batch-size:100}") int batchSize;
+    @Value("${weather.ingest.linger:20}") long lingerInMillis;
+
+    @Autowired DataPointRepository dataPointRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private RingBuffer<Pending> buffer;
+    private TransactionTemplate transaction;
+    Thread drainer;
+    private final AtomicInteger offering = new AtomicInteger();
+    private volatile boolean running;
+    private volatile boolean closed;
+    private volatile boolean idle;
+    private volatile Thread stopping;
+
+    @PostConstruct
+    public void start() {
+        buffer = new RingBuffer<>(bufferSize);
+        transaction = new TransactionTemplate(transactionManager);
+        running = true;
+        closed = false;
+
+        drainer = new Thread(this::drain, "weather-write-behind");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = Thread.currentThread();
+        running = false;
+        // An offer that saw the pipeline running still lands in the buffer before the last drain
+        while (offering.get() > 0)
+            LockSupport.park(this);
+        closed = true;
+        LockSupport.unpark(drainer);
+        drainer.join();
+    }
+
+    /**
+     * Returns false when the buffer is full or the pipeline is shutting down
+     */
+    public boolean offer(Airport airport, DataPoint dataPoint) {
+        Assert.isTrue(airport != null, "airport is required");
+        Assert.isTrue(dataPoint != null, "dataPoint is required");
+
+        offering.incrementAndGet();
+        try {
+            if (!running || !buffer.offer(new Pending(airport, dataPoint)))
+                return false;
+
+            if (idle)
+                LockSupport.unpark(drainer);
+            return true;
+        } finally {
+            // The last offer to leave wakes a waiting stop
+            if (offering.decrementAndGet() == 0 && !running)
+                LockSupport.unpark(stopping);
+        }
+    }
+
+    public int pending() {
+        return buffer.size();
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (!closed || buffer.size() > 0) {
+            Pending pending = buffer.poll();
+            if (pending == null) {
+                await(0);
+                continue;
+            }
+
+            batch.add(pending);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerInMillis);
+            long remaining;
+            while (batch.size() < batchSize) {
+                pending = buffer.poll();
+                if (pending != null)
+                    batch.add(pending);
+                else if (running && (remaining = deadline - System.nanoTime()) > 0)
+                    await(remaining);
+                else
+                    break;
+            }
+
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    // Parks until an offer or stop unparks it, or the timeout passes when there is one. Flagging
+    // idle before looking at the buffer again means an offer racing with it always sees the flag.
+    private void await(long timeoutInNanos) {
+        idle = true;
+        if (buffer.size() == 0 && !closed) {
+            if (timeoutInNanos > 0)
+                LockSupport.parkNanos(this, timeoutInNanos);
+            else
+                LockSupport.park(this);
+        }
+        idle = false;
+    }
+
+    private void write(List<Pending> batch) {
+        try {
+            transaction.execute(status -> {
+                batch.forEach(this::persist);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // One bad point, e.g. of an airport deleted meanwhile, must not sink the whole batch
+            log.warn("Batch of {} data points failed, retrying one by one", batch.size(), e);
+            for (Pending pending : batch)
+                try {
+                    transaction.execute(status -> {
+                        persist(pending);
+                        return null;
+                    });
+                } catch (RuntimeException failure) {
+                    log.error("Dropping data point for {}: {}", pending.airport.getIata(), failure.getMessage());
+                }
+        }
+    }
+
+    private void persist(Pending pending) {
+        // Fresh entity on every attempt, a rolled back one keeps its generated id
+        dataPointRepository.createMeasurement(pending.airport, new DataPoint.Builder()
+                .withType(pending.dataPoint.getType())
+                .withMean(pending.dataPoint.getMean())
+                .withFirst(pending.dataPoint.getFirst())
+                .withSecond(pending.dataPoint.getSecond())
+                .withThird(pending.dataPoint.getThird())
+                .withCount(pending.dataPoint.getCount())
+                .build());
+    }
+
+    private static class Pending {
+
+        private final Airport airport;
+        private final DataPoint dataPoint;
+
+        Pending(Airport airport, DataPoint dataPoint) {
+            this.airport = airport;
+            this.dataPoint = dataPoint;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.latest;
+
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.domain.Measurement;
+
+/**
+ *  Latest Measurement Store
+ *
+ *  In-memory table of the last {@link Measurement} seen for each airport, overall
+ *  and for each {@link DataPointType}, so weather queries never hit the database
+ */
+public interface LatestMeasurementStore {
+
+    void update(Measurement measurement);
+
+    void remove(IATA iata);
+
+    void reload(Iterable<Measurement> measurements);
+
+    Measurement findLatest(IATA iata);
+
+    Measurement findLatest(IATA iata, DataPointType type);
+
+    /**
+     * Stamp that changes whenever the measurements of the given airport do
+     */
+    long version(IATA iata);
+}
@@ -0,0 +1,126 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.latest.impl;
+
+import com.crossover.trial.weather.domain.DataPointRepository;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.domain.Measurement;
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+
+/**
+ *  Atomic Latest Measurement Store
+ *
+ *  Slots are addressed by the dense {@link IATA} index, so a lookup is a single
+ *  volatile read. Writers publish with compare-and-set and only ever replace a
+ *  slot with a newer measurement, so out of order commits can't go back in time.
+ *  Version stamps are only bumped after a slot is published, so a reader that takes
+ *  the stamp first never pairs a fresh stamp with stale data.
+ */
+@Component
+public class AtomicLatestMeasurementStore implements LatestMeasurementStore {
+
+    private static final int TYPES = DataPointType.values().length;
+
+    private static final BinaryOperator<Measurement> NEWEST = (current, candidate) ->
+            current == null || candidate.isNewerThan(current) ? candidate : current;
+
+    @Autowired DataPointRepository dataPointRepository;
+
+    private final AtomicReferenceArray<Measurement> latest =
+            new AtomicReferenceArray<>(IATA.CARDINALITY);
+    private final AtomicReferenceArray<Measurement> latestByType =
+            new AtomicReferenceArray<>(IATA.CARDINALITY * TYPES);
+    private final AtomicLongArray versions = new AtomicLongArray(IATA.CARDINALITY);
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void warmUp() {
+        reload(dataPointRepository.findLatestMeasurementsByType());
+    }
+
+    @Override
+    public void update(Measurement measurement) {
+        Assert.isTrue(measurement != null, "measurement is required");
+
+        int index = measurement.getAirport().getIata().toIndex();
+        latest.accumulateAndGet(index, measurement, NEWEST);
+        latestByType.accumulateAndGet(slot(index, measurement.getPoint().getType()), measurement, NEWEST);
+        versions.incrementAndGet(index);
+    }
+
+    @Override
+    public void remove(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+
+        int index = iata.toIndex();
+        latest.set(index, null);
+        for (DataPointType type : DataPointType.values())
+            latestByType.set(slot(index, type), null);
+        versions.incrementAndGet(index);
+    }
+
+    @Override
+    public void reload(Iterable<Measurement> measurements) {
+        Assert.isTrue(measurements != null, "measurements is required");
+
+        for (int index = 0; index < latest.length(); index++)
+            latest.set(index, null);
+        for (int slot = 0; slot < latestByType.length(); slot++)
+            latestByType.set(slot, null);
+        measurements.forEach(this::update);
+        for (int index = 0; index < versions.length(); index++)
+            versions.incrementAndGet(index);
+    }
+
+    @Override
+    public Measurement findLatest(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+        return latest.get(iata.toIndex());
+    }
+
+    @Override
+    public Measurement findLatest(IATA iata, DataPointType type) {
+        Assert.isTrue(iata != null, "iata is required");
+        Assert.isTrue(type != null, "type is required");
+        return latestByType.get(slot(iata.toIndex(), type));
+    }
+
+    @Override
+    public long version(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+        return versions.get(iata.toIndex());
+    }
+
+    private static int slot(int index, DataPointType type) {
+        return index * TYPES + type.ordinal();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ *  Measurement Counter
+ *
+ *  Counts the measurements written over the last day in a ring of per-minute buckets. Each
+ *  bucket packs the minute it counts for with its count in one atomic long, so a bucket left
+ *  over from a previous lap is reset by the same compare-and-set that counts into it. Reading
+ *  sums a fixed number of buckets, whatever the size of the measurement table.
+ */
+@Component
+public class MeasurementCounter {
+
+    static final int MINUTES = 24 * 60;
+
+    private static final long MINUTE = 60_000;
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    LongSupplier clock = System::currentTimeMillis;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(MINUTES);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long count) {
+        Assert.isTrue(count >= 0 && count <= COUNT_MASK, "count is out of range");
+
+        long minute = clock.getAsLong() / MINUTE;
+        int slot = (int) (minute % MINUTES);
+        while (true) {
+            long bucket = buckets.get(slot);
+            long next = (bucket >>> 32) == minute ? bucket + count : minute << 32 | count;
+            if (buckets.compareAndSet(slot, bucket, next))
+                return;
+        }
+    }
+
+    /**
+     * Measurements counted within the last {@link #MINUTES} minutes, the current one included
+     */
+    public long count() {
+        long minute = clock.getAsLong() / MINUTE;
+
+        long total = 0;
+        for (int slot = 0; slot < MINUTES; slot++) {
+            long bucket = buckets.get(slot);
+            long bucketMinute = bucket >>> 32;
+            if (bucketMinute > minute - MINUTES && bucketMinute <= minute)
+                total += bucket & COUNT_MASK;
+        }
+        return total;
+    }
+
+    public void clear() {
+        for (int slot = 0; slot < MINUTES; slot++)
+            buckets.set(slot, 0);
+    }
+}
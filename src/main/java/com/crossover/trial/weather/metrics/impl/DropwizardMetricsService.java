@@ -28,12 +28,16 @@ import com.crossover.trial.weather.domain.Airport;
 import com.crossover.trial.weather.domain.AirportRepository;
 import com.crossover.trial.weather.domain.DataPointRepository;
 import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.metrics.MeasurementCounter;
 import com.crossover.trial.weather.metrics.MetricsReport;
 import com.crossover.trial.weather.metrics.MetricsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -45,9 +49,21 @@ public class DropwizardMetricsService implements MetricsService<Meter, Histogram
 
     @Autowired AirportRepository airportRepository;
     @Autowired DataPointRepository dataPointRepository;
+    @Autowired MeasurementCounter measurementCounter;
 
     private MetricRegistry registry = new MetricRegistry();
     private final ReadWriteLock registryLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean seeded = new AtomicBoolean();
+
+    /**
+     * Seeds the counter once with what is already stored, all of it in the current minute
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void warmUp() {
+        if (seeded.compareAndSet(false, true))
+            measurementCounter.add(dataPointRepository
+                    .countTotalMeasurementsInLastTimeWindow(timestamp().minusDays(1)));
+    }
 
     @Override
     public void markRequest(IATA iata, double radius) {
@@ -72,9 +88,7 @@ public class DropwizardMetricsService implements MetricsService<Meter, Histogram
             MetricsReport.Builder<Meter, HistogramSnapshotDTO> builder = new MetricsReport.Builder<Meter, HistogramSnapshotDTO>()
                     .withRadiusFrequency(new HistogramSnapshotDTO(registry
                             .histogram("radius")))
-                    .withDataSize(dataPointRepository
-                            .countTotalMeasurementsInLastTimeWindow(timestamp()
-                                    .minusDays(1)));
+                    .withDataSize(measurementCounter.count());
 
             registry.getMeters().entrySet().stream().forEach(entry -> {
                 Airport airport = airportRepository.findOne(IATA.valueOf(entry.getKey()));
@@ -99,6 +113,7 @@ public class DropwizardMetricsService implements MetricsService<Meter, Histogram
         write.lock();
         try {
             registry = new MetricRegistry();
+            measurementCounter.clear();
         } finally {
             write.unlock();
         }
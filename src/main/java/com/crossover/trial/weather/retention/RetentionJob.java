@@ -0,0 +1,110 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.retention;
+
+import com.crossover.trial.weather.domain.Measurement;
+import com.crossover.trial.weather.domain.MeasurementRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.ZonedDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Retention Job
+ *
+ *  Periodically folds measurements older than the raw age into hourly rollups and hourly
+ *  rollups older than the hourly age into daily ones, deleting what was folded in batches,
+ *  so the database stops growing with uptime. A non positive interval disables it.
+ */
+@Component
+@ConditionalOnProperty(name="weather.measurements.storage", havingValue="jpa", matchIfMissing=true)
+public class RetentionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionJob.class);
+
+    @Value("${weather.retention.raw-age:24}") long rawAgeInHours;
+    @Value("${weather.retention.hourly-age:30}") long hourlyAgeInDays;
+    @Value("${weather.retention.interval:300}") long intervalInSeconds;
+    @Value("${weather.retention.batch-size:1000}") int batchSize;
+
+    @Autowired MeasurementRollupRepository rollupRepository;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (intervalInSeconds <= 0)
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "weather-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rollUp(Measurement.timestamp());
+            } catch (RuntimeException e) {
+                log.error("Retention run failed", e);
+            }
+        }, intervalInSeconds, intervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    /**
+     * Rolls up everything aged out as of the given time, returning how many rows were folded
+     */
+    public long rollUp(ZonedDateTime now) {
+        long measurements = 0;
+        int folded;
+        do {
+            folded = rollupRepository.rollUpMeasurements(now.minusHours(rawAgeInHours), batchSize);
+            measurements += folded;
+        } while (folded == batchSize);
+
+        long hours = 0;
+        do {
+            folded = rollupRepository.rollUpHours(now.minusDays(hourlyAgeInDays), batchSize);
+            hours += folded;
+        } while (folded == batchSize);
+
+        if (measurements + hours > 0)
+            log.info("Rolled up {} measurements and {} hourly rollups", measurements, hours);
+
+        return measurements + hours;
+    }
+}
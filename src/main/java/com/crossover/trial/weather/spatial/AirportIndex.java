@@ -0,0 +1,49 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.IATA;
+
+import java.util.List;
+
+/**
+ *  Airport Index
+ *
+ *  In-memory spatial index over the registered {@link Airport}s, so radius
+ *  queries never have to scan the AIRPORT table
+ */
+public interface AirportIndex {
+
+    void put(Airport airport);
+
+    void remove(IATA iata);
+
+    void reload(Iterable<Airport> airports);
+
+    Airport find(IATA iata);
+
+    List<Airport> findInRadius(IATA fromIata, double distanceInKm);
+
+    List<Airport> findNearest(IATA fromIata, int count);
+}
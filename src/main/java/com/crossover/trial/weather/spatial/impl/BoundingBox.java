@@ -0,0 +1,74 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial.impl;
+
+import static com.crossover.trial.weather.util.Constants.EARTH_RADIUS;
+
+/**
+ *  Bounding Box
+ *
+ *  Latitude/longitude box enclosing the spherical cap of a given radius around a point.
+ *  Longitudes are left unwrapped, so the box may extend past -180 or 180 when the cap
+ *  crosses the antimeridian. Caps reaching a pole cover every longitude.
+ */
+final class BoundingBox {
+
+    // Keeps the box conservative against rounding at its edges
+    private static final double EPSILON = 1e-9;
+
+    final double minLatitude;
+    final double maxLatitude;
+    final double minLongitude;
+    final double maxLongitude;
+
+    private BoundingBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    static BoundingBox around(double latitude, double longitude, double distanceInKm) {
+        double angle = distanceInKm / EARTH_RADIUS;
+        double deltaLatitude = Math.toDegrees(angle) + EPSILON;
+
+        double minLatitude = latitude - deltaLatitude;
+        double maxLatitude = latitude + deltaLatitude;
+
+        double deltaLongitude = 180;
+        if (minLatitude > -90 && maxLatitude < 90) {
+            double ratio = Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+            if (ratio < 1)
+                deltaLongitude = Math.toDegrees(Math.asin(ratio)) + EPSILON;
+        }
+
+        return deltaLongitude >= 180 ?
+                new BoundingBox(Math.max(minLatitude, -90), Math.min(maxLatitude, 90), -180, 180) :
+                new BoundingBox(Math.max(minLatitude, -90), Math.min(maxLatitude, 90),
+                        longitude - deltaLongitude, longitude + deltaLongitude);
+    }
+
+    boolean coversAllLongitudes() {
+        return maxLongitude - minLongitude >= 360;
+    }
+}
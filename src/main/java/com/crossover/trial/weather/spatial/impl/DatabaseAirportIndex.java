@@ -0,0 +1,157 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial.impl;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.AirportIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.crossover.trial.weather.util.Constants.EARTH_RADIUS;
+
+/**
+ *  Database Airport Index
+ *
+ *  Keeps nothing in memory. Radius queries push the {@link BoundingBox} of the cap down to the
+ *  database, where the AIRPORT latitude and longitude indexes narrow the scan, and only run
+ *  haversine over the rows that survive it. Meant for catalogs too big to hold in memory.
+ */
+@Component
+@ConditionalOnProperty(name="weather.airports.index", havingValue="database")
+public class DatabaseAirportIndex implements AirportIndex {
+
+    private static final double INITIAL_NEAREST_RADIUS = 100;
+
+    @Autowired AirportRepository airportRepository;
+    @Autowired EntityManager manager;
+
+    @Override
+    public void put(Airport airport) {
+        Assert.isTrue(airport != null, "airport is required");
+    }
+
+    @Override
+    public void remove(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+    }
+
+    @Override
+    public void reload(Iterable<Airport> airports) {
+        Assert.isTrue(airports != null, "airports is required");
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Airport find(IATA iata) {
+        return airportRepository.findOne(iata);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public List<Airport> findInRadius(IATA fromIata, double distanceInKm) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(distanceInKm > 0, "distanceInKm must be positive");
+
+        Airport fromAirport = airportRepository.findOne(fromIata);
+        if (fromAirport == null)
+            return Collections.emptyList();
+
+        return collect(fromAirport, distanceInKm).stream()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public List<Airport> findNearest(IATA fromIata, int count) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(count > 0, "count must be positive");
+
+        Airport fromAirport = airportRepository.findOne(fromIata);
+        if (fromAirport == null)
+            return Collections.emptyList();
+
+        // Widens the search until it holds enough airports or covers the whole globe
+        double distanceInKm = INITIAL_NEAREST_RADIUS;
+        List<Airport> candidates = collect(fromAirport, distanceInKm);
+        while (candidates.size() < count && distanceInKm < Math.PI * EARTH_RADIUS) {
+            distanceInKm *= 4;
+            candidates = collect(fromAirport, distanceInKm);
+        }
+
+        return candidates.stream()
+                .sorted(Comparator.comparingDouble(fromAirport::calculateDistance)
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    private List<Airport> collect(Airport fromAirport, double distanceInKm) {
+        BoundingBox box = BoundingBox.around(fromAirport.getLatitude(), fromAirport.getLongitude(), distanceInKm);
+
+        // Boxes crossing the antimeridian are split in two longitude ranges
+        double firstFrom = -180, firstTo = 180, secondFrom = -180, secondTo = 180;
+        if (!box.coversAllLongitudes()) {
+            firstFrom = box.minLongitude;
+            firstTo = box.maxLongitude;
+            secondFrom = box.minLongitude;
+            secondTo = box.maxLongitude;
+            if (box.minLongitude < -180) {
+                firstFrom = box.minLongitude + 360;
+                firstTo = 180;
+                secondFrom = -180;
+            } else if (box.maxLongitude >= 180) {
+                firstTo = 180;
+                secondFrom = -180;
+                secondTo = box.maxLongitude - 360;
+            }
+        }
+
+        return manager.createQuery("select a from Airport a " +
+                "where a.iata != :fromIata " +
+                "and a.latitude between :minLatitude and :maxLatitude " +
+                "and (a.longitude between :firstFrom and :firstTo " +
+                    "or a.longitude between :secondFrom and :secondTo)", Airport.class)
+                .setParameter("fromIata", fromAirport.getIata())
+                .setParameter("minLatitude", box.minLatitude)
+                .setParameter("maxLatitude", box.maxLatitude)
+                .setParameter("firstFrom", firstFrom)
+                .setParameter("firstTo", firstTo)
+                .setParameter("secondFrom", secondFrom)
+                .setParameter("secondTo", secondTo)
+                .getResultList().stream()
+                .filter(toAirport -> fromAirport.calculateDistance(toAirport) <= distanceInKm)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial.impl;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+import static com.crossover.trial.weather.util.Constants.EARTH_RADIUS;
+
+/**
+ *  Distance Kernel
+ *
+ *  Structure of arrays view of the airport catalog holding radian coordinates and the
+ *  cosine of every latitude, so distances never recompute trigonometry of the stored side.
+ *
+ *  Radius scans first run a branch free pass over all slots computing an equirectangular
+ *  lower bound of the haversine term, using sin(x) >= 2x/pi on [0, pi/2], and then run the
+ *  exact haversine only on the slots the bound couldn't rule out. Empty slots hold NaN and
+ *  drop out of every comparison.
+ *
+ *  Not thread safe, callers are expected to guard it.
+ */
+public final class DistanceKernel {
+
+    // Keeps the pre-check conservative against rounding
+    private static final double SLACK = 1 + 1e-9;
+
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private double[] cosLatitudes = new double[0];
+    private double[] bounds = new double[0];
+
+    public int capacity() {
+        return latitudes.length;
+    }
+
+    public void ensureCapacity(int capacity) {
+        int current = latitudes.length;
+        if (capacity <= current)
+            return;
+
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        cosLatitudes = Arrays.copyOf(cosLatitudes, capacity);
+        bounds = new double[capacity];
+        for (int slot = current; slot < capacity; slot++)
+            clear(slot);
+    }
+
+    public void set(int slot, double latitude, double longitude) {
+        latitudes[slot] = Math.toRadians(latitude);
+        longitudes[slot] = Math.toRadians(longitude);
+        cosLatitudes[slot] = Math.cos(latitudes[slot]);
+    }
+
+    public void clear(int slot) {
+        latitudes[slot] = Double.NaN;
+        longitudes[slot] = Double.NaN;
+        cosLatitudes[slot] = Double.NaN;
+    }
+
+    public double distance(int from, int to) {
+        return haversine(from, to);
+    }
+
+    /**
+     * Writes the slots within the radius of the origin, and their distances, into the
+     * given buffers and returns how many were found. Buffers must hold {@link #capacity()}.
+     */
+    public int findInRadius(int from, double distanceInKm, int[] slots, double[] distances) {
+        Assert.isTrue(distanceInKm > 0, "distanceInKm must be positive");
+        Assert.isTrue(slots.length >= capacity() && distances.length >= capacity(),
+                "buffers must hold every slot");
+
+        double halfAngle = Math.min(distanceInKm / EARTH_RADIUS, Math.PI) / 2;
+        double limit = Math.PI * Math.PI * Math.pow(Math.sin(halfAngle), 2) * SLACK;
+
+        double latitude = latitudes[from];
+        double longitude = longitudes[from];
+        double cosLatitude = cosLatitudes[from];
+
+        int size = capacity();
+        for (int slot = 0; slot < size; slot++) {
+            double deltaLat = latitudes[slot] - latitude;
+            double deltaLon = Math.abs(longitudes[slot] - longitude);
+            deltaLon = Math.min(deltaLon, 2 * Math.PI - deltaLon);
+            bounds[slot] = deltaLat * deltaLat + cosLatitude * cosLatitudes[slot] * deltaLon * deltaLon;
+        }
+
+        int total = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (!(bounds[slot] <= limit) || slot == from)
+                continue;
+
+            double distance = haversine(from, slot);
+            if (distance <= distanceInKm) {
+                slots[total] = slot;
+                distances[total++] = distance;
+            }
+        }
+        return total;
+    }
+
+    // Takes the pair in slot order, so both ends of it always get the very same double
+    private double haversine(int from, int to) {
+        if (from > to) {
+            int swap = from;
+            from = to;
+            to = swap;
+        }
+
+        double sinDeltaLat = Math.sin((latitudes[to] - latitudes[from]) / 2);
+        double sinDeltaLon = Math.sin((longitudes[to] - longitudes[from]) / 2);
+        double a = sinDeltaLat * sinDeltaLat +
+                sinDeltaLon * sinDeltaLon * cosLatitudes[from] * cosLatitudes[to];
+        return EARTH_RADIUS * 2 * Math.asin(Math.sqrt(Math.min(1, a)));
+    }
+}
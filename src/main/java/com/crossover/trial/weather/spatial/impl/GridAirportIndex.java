@@ -0,0 +1,220 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial.impl;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.AirportIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import static com.crossover.trial.weather.util.Constants.EARTH_RADIUS;
+
+/**
+ *  Grid Airport Index
+ *
+ *  Buckets airports into 1x1 degree latitude/longitude cells. A radius query computes
+ *  the {@link BoundingBox} of the spherical cap around the origin and only runs haversine
+ *  over the airports of the cells it overlaps, wrapping around the antimeridian.
+ */
+@Component
+@ConditionalOnProperty(name="weather.airports.index", havingValue="grid")
+public class GridAirportIndex implements AirportIndex {
+
+    static final int ROWS = 180;
+    static final int COLUMNS = 360;
+
+    private static final double INITIAL_NEAREST_RADIUS = 100;
+
+    @Autowired AirportRepository airportRepository;
+
+    private final Map<IATA, Airport> airports = new HashMap<>();
+    private final Map<Integer, List<Airport>> cells = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void warmUp() {
+        reload(airportRepository.findAll());
+    }
+
+    @Override
+    public void put(Airport airport) {
+        Assert.isTrue(airport != null, "airport is required");
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            unlink(airports.put(airport.getIata(), airport));
+            cells.computeIfAbsent(cell(airport.getLatitude(), airport.getLongitude()),
+                    cell -> new ArrayList<>()).add(airport);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void remove(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            unlink(airports.remove(iata));
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void reload(Iterable<Airport> airports) {
+        Assert.isTrue(airports != null, "airports is required");
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            this.airports.clear();
+            cells.clear();
+            airports.forEach(this::put);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public Airport find(IATA iata) {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            return airports.get(iata);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public List<Airport> findInRadius(IATA fromIata, double distanceInKm) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(distanceInKm > 0, "distanceInKm must be positive");
+
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            Airport fromAirport = airports.get(fromIata);
+            if (fromAirport == null)
+                return Collections.emptyList();
+
+            List<Airport> result = collect(fromAirport, distanceInKm);
+            Collections.sort(result);
+            return result;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public List<Airport> findNearest(IATA fromIata, int count) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(count > 0, "count must be positive");
+
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            Airport fromAirport = airports.get(fromIata);
+            if (fromAirport == null)
+                return Collections.emptyList();
+
+            // Widens the search until it holds enough airports or covers the whole globe
+            double distanceInKm = INITIAL_NEAREST_RADIUS;
+            List<Airport> candidates = collect(fromAirport, distanceInKm);
+            while (candidates.size() < count && distanceInKm < Math.PI * EARTH_RADIUS) {
+                distanceInKm *= 4;
+                candidates = collect(fromAirport, distanceInKm);
+            }
+
+            return candidates.stream()
+                    .sorted(Comparator.comparingDouble(fromAirport::calculateDistance)
+                            .thenComparing(Comparator.naturalOrder()))
+                    .limit(count)
+                    .collect(Collectors.toList());
+        } finally {
+            read.unlock();
+        }
+    }
+
+    private List<Airport> collect(Airport fromAirport, double distanceInKm) {
+        BoundingBox box = BoundingBox.around(fromAirport.getLatitude(), fromAirport.getLongitude(), distanceInKm);
+
+        int fromRow = row(box.minLatitude);
+        int toRow = row(box.maxLatitude);
+        int fromColumn = (int) Math.floor(box.minLongitude + 180);
+        int toColumn = (int) Math.floor(box.maxLongitude + 180);
+        if (box.coversAllLongitudes() || toColumn - fromColumn >= COLUMNS - 1) {
+            fromColumn = 0;
+            toColumn = COLUMNS - 1;
+        }
+
+        List<Airport> result = new ArrayList<>();
+        for (int row = fromRow; row <= toRow; row++)
+            for (int column = fromColumn; column <= toColumn; column++) {
+                List<Airport> cell = cells.get(row * COLUMNS + Math.floorMod(column, COLUMNS));
+                if (cell == null)
+                    continue;
+                for (Airport toAirport : cell)
+                    if (!toAirport.equals(fromAirport) &&
+                            fromAirport.calculateDistance(toAirport) <= distanceInKm)
+                        result.add(toAirport);
+            }
+
+        return result;
+    }
+
+    private void unlink(Airport airport) {
+        if (airport == null)
+            return;
+
+        int cell = cell(airport.getLatitude(), airport.getLongitude());
+        List<Airport> airportsInCell = cells.get(cell);
+        airportsInCell.remove(airport);
+        if (airportsInCell.isEmpty())
+            cells.remove(cell);
+    }
+
+    static int cell(double latitude, double longitude) {
+        return row(latitude) * COLUMNS + Math.floorMod((int) Math.floor(longitude + 180), COLUMNS);
+    }
+
+    static int row(double latitude) {
+        return Math.min(ROWS - 1, (int) Math.floor(latitude + 90));
+    }
+}
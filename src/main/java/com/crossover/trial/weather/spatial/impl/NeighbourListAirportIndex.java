@@ -0,0 +1,366 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial.impl;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.AirportIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *  Neighbour List Airport Index
+ *
+ *  Keeps, for every airport, the airports within a maximum radius sorted by distance as a pair
+ *  of parallel slot and distance arrays. A radius query inside that maximum is a binary search
+ *  over the cached distances, and so are nearest queries whose answer fits in the list.
+ *
+ *  Registering or deleting an airport only patches the lists of its own neighbours, found with
+ *  a scan of the {@link DistanceKernel} over the whole catalog. Anything
+ *  beyond the cached radius is answered by a {@link SphereTreeAirportIndex} kept alongside.
+ */
+@Component
+@ConditionalOnProperty(name="weather.airports.index", havingValue="neighbours", matchIfMissing=true)
+public class NeighbourListAirportIndex implements AirportIndex {
+
+    private static final int[] NO_SLOTS = new int[0];
+    private static final double[] NO_DISTANCES = new double[0];
+
+    @Autowired AirportRepository airportRepository;
+
+    @Value("${weather.airports.neighbours.max-radius:1000}")
+    double maxRadius;
+
+    private final SphereTreeAirportIndex tree = new SphereTreeAirportIndex();
+    private final DistanceKernel kernel = new DistanceKernel();
+
+    private final Map<IATA, Integer> slots = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private Airport[] airports = new Airport[0];
+    private int[][] neighbourSlots = new int[0][];
+    private double[][] neighbourDistances = new double[0][];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public NeighbourListAirportIndex() {}
+
+    public NeighbourListAirportIndex(double maxRadius) {
+        this.maxRadius = maxRadius;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void warmUp() {
+        reload(airportRepository.findAll());
+    }
+
+    @Override
+    public void put(Airport airport) {
+        Assert.isTrue(airport != null, "airport is required");
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            tree.put(airport);
+
+            Integer slot = slots.get(airport.getIata());
+            if (slot != null) {
+                Airport current = airports[slot];
+                if (current.getLatitude() == airport.getLatitude() &&
+                        current.getLongitude() == airport.getLongitude()) {
+                    airports[slot] = airport;
+                    return;
+                }
+                unlink(slot);
+            }
+
+            link(airport);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void remove(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            tree.remove(iata);
+
+            Integer slot = slots.get(iata);
+            if (slot != null)
+                unlink(slot);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void reload(Iterable<Airport> airports) {
+        Assert.isTrue(airports != null, "airports is required");
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            tree.reload(airports);
+
+            slots.clear();
+            freeSlots.clear();
+            List<Airport> source = new ArrayList<>();
+            airports.forEach(airport -> {
+                Integer slot = slots.get(airport.getIata());
+                if (slot == null) {
+                    slots.put(airport.getIata(), source.size());
+                    source.add(airport);
+                } else
+                    source.set(slot, airport);
+            });
+
+            int size = source.size();
+            this.airports = source.toArray(new Airport[size]);
+            neighbourSlots = new int[size][];
+            neighbourDistances = new double[size][];
+
+            kernel.ensureCapacity(size);
+            for (int slot = 0; slot < kernel.capacity(); slot++)
+                if (slot < size)
+                    kernel.set(slot, this.airports[slot].getLatitude(), this.airports[slot].getLongitude());
+                else
+                    kernel.clear(slot);
+
+            for (int slot = 0; slot < size; slot++) {
+                Airport fromAirport = this.airports[slot];
+                List<Airport> neighbours = tree.findInRadius(fromAirport.getIata(), maxRadius);
+
+                int[] neighbourSlots = new int[neighbours.size()];
+                double[] neighbourDistances = new double[neighbours.size()];
+                for (int i = 0; i < neighbourSlots.length; i++) {
+                    neighbourSlots[i] = slots.get(neighbours.get(i).getIata());
+                    neighbourDistances[i] = kernel.distance(slot, neighbourSlots[i]);
+                }
+                sortByDistance(neighbourSlots, neighbourDistances);
+
+                this.neighbourSlots[slot] = neighbourSlots;
+                this.neighbourDistances[slot] = neighbourDistances;
+            }
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public Airport find(IATA iata) {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            Integer slot = slots.get(iata);
+            return slot == null ? null : airports[slot];
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public List<Airport> findInRadius(IATA fromIata, double distanceInKm) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(distanceInKm > 0, "distanceInKm must be positive");
+
+        if (distanceInKm > maxRadius)
+            return tree.findInRadius(fromIata, distanceInKm);
+
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            Integer slot = slots.get(fromIata);
+            if (slot == null)
+                return Collections.emptyList();
+
+            int total = upperBound(neighbourDistances[slot], distanceInKm);
+            List<Airport> result = new ArrayList<>(total);
+            for (int i = 0; i < total; i++)
+                result.add(airports[neighbourSlots[slot][i]]);
+
+            Collections.sort(result);
+            return result;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public List<Airport> findNearest(IATA fromIata, int count) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(count > 0, "count must be positive");
+
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            Integer slot = slots.get(fromIata);
+            if (slot == null)
+                return Collections.emptyList();
+
+            if (neighbourSlots[slot].length >= count) {
+                List<Airport> result = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    result.add(airports[neighbourSlots[slot][i]]);
+                return result;
+            }
+        } finally {
+            read.unlock();
+        }
+
+        return tree.findNearest(fromIata, count);
+    }
+
+    private void link(Airport airport) {
+        int slot = allocate(airport);
+
+        int[] neighbourSlots = new int[kernel.capacity()];
+        double[] neighbourDistances = new double[kernel.capacity()];
+        int total = kernel.findInRadius(slot, maxRadius, neighbourSlots, neighbourDistances);
+        for (int i = 0; i < total; i++)
+            insert(neighbourSlots[i], slot, neighbourDistances[i]);
+
+        neighbourSlots = Arrays.copyOf(neighbourSlots, total);
+        neighbourDistances = Arrays.copyOf(neighbourDistances, total);
+        sortByDistance(neighbourSlots, neighbourDistances);
+
+        this.neighbourSlots[slot] = neighbourSlots;
+        this.neighbourDistances[slot] = neighbourDistances;
+    }
+
+    private void unlink(int slot) {
+        for (int neighbour : neighbourSlots[slot])
+            delete(neighbour, slot);
+
+        slots.remove(airports[slot].getIata());
+        airports[slot] = null;
+        kernel.clear(slot);
+        neighbourSlots[slot] = NO_SLOTS;
+        neighbourDistances[slot] = NO_DISTANCES;
+        freeSlots.push(slot);
+    }
+
+    private int allocate(Airport airport) {
+        int slot;
+        if (!freeSlots.isEmpty())
+            slot = freeSlots.pop();
+        else {
+            slot = airports.length;
+            int capacity = Math.max(16, slot * 2);
+            airports = Arrays.copyOf(airports, capacity);
+            neighbourSlots = Arrays.copyOf(neighbourSlots, capacity);
+            neighbourDistances = Arrays.copyOf(neighbourDistances, capacity);
+            kernel.ensureCapacity(capacity);
+            for (int i = slot + 1; i < capacity; i++) {
+                neighbourSlots[i] = NO_SLOTS;
+                neighbourDistances[i] = NO_DISTANCES;
+                freeSlots.add(i);
+            }
+        }
+
+        airports[slot] = airport;
+        kernel.set(slot, airport.getLatitude(), airport.getLongitude());
+        slots.put(airport.getIata(), slot);
+        return slot;
+    }
+
+    private void insert(int slot, int neighbour, double distance) {
+        int[] neighbours = neighbourSlots[slot];
+        double[] distances = neighbourDistances[slot];
+        int at = upperBound(distances, distance);
+
+        int[] patchedNeighbours = new int[neighbours.length + 1];
+        double[] patchedDistances = new double[distances.length + 1];
+        System.arraycopy(neighbours, 0, patchedNeighbours, 0, at);
+        System.arraycopy(distances, 0, patchedDistances, 0, at);
+        patchedNeighbours[at] = neighbour;
+        patchedDistances[at] = distance;
+        System.arraycopy(neighbours, at, patchedNeighbours, at + 1, neighbours.length - at);
+        System.arraycopy(distances, at, patchedDistances, at + 1, distances.length - at);
+
+        neighbourSlots[slot] = patchedNeighbours;
+        neighbourDistances[slot] = patchedDistances;
+    }
+
+    private void delete(int slot, int neighbour) {
+        int[] neighbours = neighbourSlots[slot];
+        double[] distances = neighbourDistances[slot];
+
+        // Looked up by slot, the distance stored on this side may differ in its last bits
+        int at = 0;
+        while (at < neighbours.length && neighbours[at] != neighbour)
+            at++;
+        if (at == neighbours.length)
+            return;
+
+        int[] patchedNeighbours = new int[neighbours.length - 1];
+        double[] patchedDistances = new double[distances.length - 1];
+        System.arraycopy(neighbours, 0, patchedNeighbours, 0, at);
+        System.arraycopy(distances, 0, patchedDistances, 0, at);
+        System.arraycopy(neighbours, at + 1, patchedNeighbours, at, neighbours.length - at - 1);
+        System.arraycopy(distances, at + 1, patchedDistances, at, distances.length - at - 1);
+
+        neighbourSlots[slot] = patchedNeighbours;
+        neighbourDistances[slot] = patchedDistances;
+    }
+
+    // Index of the first distance greater than the given one
+    static int upperBound(double[] distances, double distance) {
+        int low = 0, high = distances.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (distances[middle] <= distance)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    static void sortByDistance(int[] slots, double[] distances) {
+        Integer[] order = new Integer[slots.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> distances[i]));
+
+        int[] sortedSlots = slots.clone();
+        double[] sortedDistances = distances.clone();
+        for (int i = 0; i < order.length; i++) {
+            slots[i] = sortedSlots[order[i]];
+            distances[i] = sortedDistances[order[i]];
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial.impl;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.AirportIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.*;
+
+import static com.crossover.trial.weather.util.Constants.EARTH_RADIUS;
+
+/**
+ *  Sphere Tree Airport Index
+ *
+ *  k-d tree over the 3D unit vectors of the airports. The straight line (chord) between two
+ *  unit vectors grows monotonically with their great-circle distance, so a radius query turns
+ *  into an euclidean range query with no special cases at the antimeridian or at the poles.
+ *
+ *  The tree is implicit: nodes are positions in parallel arrays, laid out so the median of
+ *  every range is its root. Writes only mark the tree as stale; it is rebuilt once on the
+ *  next read and published as an immutable snapshot, so readers never block.
+ */
+@Component
+@ConditionalOnProperty(name="weather.airports.index", havingValue="tree")
+public class SphereTreeAirportIndex implements AirportIndex {
+
+    // Keeps the chord comparison conservative, the exact distance has the final say
+    private static final double EPSILON = 1e-9;
+
+    @Autowired AirportRepository airportRepository;
+
+    private final Map<IATA, Airport> airports = new HashMap<>();
+    private volatile Tree tree = new Tree(Collections.emptyList());
+    private volatile boolean stale;
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void warmUp() {
+        reload(airportRepository.findAll());
+    }
+
+    @Override
+    public synchronized void put(Airport airport) {
+        Assert.isTrue(airport != null, "airport is required");
+        airports.put(airport.getIata(), airport);
+        stale = true;
+    }
+
+    @Override
+    public synchronized void remove(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+        if (airports.remove(iata) != null)
+            stale = true;
+    }
+
+    @Override
+    public synchronized void reload(Iterable<Airport> airports) {
+        Assert.isTrue(airports != null, "airports is required");
+        this.airports.clear();
+        airports.forEach(airport -> this.airports.put(airport.getIata(), airport));
+        stale = true;
+    }
+
+    @Override
+    public Airport find(IATA iata) {
+        Tree current = tree();
+        int position = current.positionOf(iata);
+        return position < 0 ? null : current.airports[position];
+    }
+
+    @Override
+    public List<Airport> findInRadius(IATA fromIata, double distanceInKm) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(distanceInKm > 0, "distanceInKm must be positive");
+
+        Tree current = tree();
+        int from = current.positionOf(fromIata);
+        if (from < 0)
+            return Collections.emptyList();
+
+        List<Airport> result = new ArrayList<>();
+        current.search(from, chord(distanceInKm), distanceInKm, result);
+
+        Collections.sort(result);
+        return result;
+    }
+
+    @Override
+    public List<Airport> findNearest(IATA fromIata, int count) {
+        Assert.isTrue(fromIata != null, "fromIata is required");
+        Assert.isTrue(count > 0, "count must be positive");
+
+        Tree current = tree();
+        int from = current.positionOf(fromIata);
+        if (from < 0)
+            return Collections.emptyList();
+
+        return current.nearest(from, count);
+    }
+
+    private Tree tree() {
+        if (stale)
+            synchronized (this) {
+                if (stale) {
+                    tree = new Tree(airports.values());
+                    stale = false;
+                }
+            }
+        return tree;
+    }
+
+    static double chord(double distanceInKm) {
+        double angle = distanceInKm / EARTH_RADIUS;
+        return angle >= Math.PI ? 2 + EPSILON : 2 * Math.sin(angle / 2) + EPSILON;
+    }
+
+    static final class Tree {
+
+        final Airport[] airports;
+        final double[] x;
+        final double[] y;
+        final double[] z;
+        final byte[] axis;
+        final Map<IATA, Integer> positions;
+
+        Tree(Collection<Airport> source) {
+            int size = source.size();
+            airports = source.toArray(new Airport[size]);
+            x = new double[size];
+            y = new double[size];
+            z = new double[size];
+            axis = new byte[size];
+
+            for (int i = 0; i < size; i++) {
+                double latitude = Math.toRadians(airports[i].getLatitude());
+                double longitude = Math.toRadians(airports[i].getLongitude());
+                x[i] = Math.cos(latitude) * Math.cos(longitude);
+                y[i] = Math.cos(latitude) * Math.sin(longitude);
+                z[i] = Math.sin(latitude);
+            }
+
+            build(0, size);
+
+            positions = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++)
+                positions.put(airports[i].getIata(), i);
+        }
+
+        int positionOf(IATA iata) {
+            Integer position = positions.get(iata);
+            return position == null ? -1 : position;
+        }
+
+        void search(int from, double chord, double distanceInKm, List<Airport> result) {
+            search(0, airports.length, x[from], y[from], z[from], chord, chord * chord,
+                    airports[from], distanceInKm, result);
+        }
+
+        private void search(int low, int high, double qx, double qy, double qz,
+                            double chord, double squaredChord,
+                            Airport fromAirport, double distanceInKm, List<Airport> result) {
+            while (low < high) {
+                int node = (low + high) >>> 1;
+
+                double dx = x[node] - qx, dy = y[node] - qy, dz = z[node] - qz;
+                if (dx * dx + dy * dy + dz * dz <= squaredChord && airports[node] != fromAirport &&
+                        fromAirport.calculateDistance(airports[node]) <= distanceInKm)
+                    result.add(airports[node]);
+
+                double delta = coordinate(axis[node], node) - coordinate(axis[node], qx, qy, qz);
+                boolean left = delta >= -chord;
+                boolean right = delta <= chord;
+
+                if (left && right) {
+                    search(low, node, qx, qy, qz, chord, squaredChord, fromAirport, distanceInKm, result);
+                    low = node + 1;
+                } else if (left)
+                    high = node;
+                else
+                    low = node + 1;
+            }
+        }
+
+        List<Airport> nearest(int from, int count) {
+            Neighbours neighbours = new Neighbours(Math.min(count, airports.length - 1));
+            if (neighbours.capacity > 0)
+                nearest(0, airports.length, from, x[from], y[from], z[from], neighbours);
+
+            Airport[] result = new Airport[neighbours.size];
+            for (int i = result.length - 1; i >= 0; i--)
+                result[i] = airports[neighbours.poll()];
+            return Arrays.asList(result);
+        }
+
+        // Bounded priority search: descends the near side first and only visits the far
+        // side while the splitting plane is closer than the worst neighbour found so far
+        private void nearest(int low, int high, int from, double qx, double qy, double qz,
+                             Neighbours neighbours) {
+            if (low >= high)
+                return;
+
+            int node = (low + high) >>> 1;
+            if (node != from) {
+                double dx = x[node] - qx, dy = y[node] - qy, dz = z[node] - qz;
+                neighbours.offer(node, dx * dx + dy * dy + dz * dz);
+            }
+
+            double delta = coordinate(axis[node], node) - coordinate(axis[node], qx, qy, qz);
+            if (delta >= 0) {
+                nearest(low, node, from, qx, qy, qz, neighbours);
+                if (!neighbours.isFull() || delta * delta <= neighbours.worst())
+                    nearest(node + 1, high, from, qx, qy, qz, neighbours);
+            } else {
+                nearest(node + 1, high, from, qx, qy, qz, neighbours);
+                if (!neighbours.isFull() || delta * delta <= neighbours.worst())
+                    nearest(low, node, from, qx, qy, qz, neighbours);
+            }
+        }
+
+        private void build(int low, int high) {
+            if (high - low < 2)
+                return;
+
+            int node = (low + high) >>> 1;
+            byte widest = widestAxis(low, high);
+            select(low, high - 1, node, widest);
+            axis[node] = widest;
+
+            build(low, node);
+            build(node + 1, high);
+        }
+
+        private byte widestAxis(int low, int high) {
+            double minX = 1, maxX = -1, minY = 1, maxY = -1, minZ = 1, maxZ = -1;
+            for (int i = low; i < high; i++) {
+                minX = Math.min(minX, x[i]); maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]); maxY = Math.max(maxY, y[i]);
+                minZ = Math.min(minZ, z[i]); maxZ = Math.max(maxZ, z[i]);
+            }
+            double spreadX = maxX - minX, spreadY = maxY - minY, spreadZ = maxZ - minZ;
+            if (spreadX >= spreadY && spreadX >= spreadZ)
+                return 0;
+            return spreadY >= spreadZ ? (byte) 1 : (byte) 2;
+        }
+
+        // Quickselect: leaves the k-th smallest coordinate at k, smaller ones before and larger after
+        private void select(int low, int high, int k, byte dimension) {
+            while (low < high) {
+                double pivot = coordinate(dimension, (low + high) >>> 1);
+                int i = low, j = high;
+                while (i <= j) {
+                    while (coordinate(dimension, i) < pivot) i++;
+                    while (coordinate(dimension, j) > pivot) j--;
+                    if (i <= j)
+                        swap(i++, j--);
+                }
+                if (k <= j)
+                    high = j;
+                else if (k >= i)
+                    low = i;
+                else
+                    return;
+            }
+        }
+
+        private double coordinate(byte dimension, int i) {
+            return dimension == 0 ? x[i] : dimension == 1 ? y[i] : z[i];
+        }
+
+        private static double coordinate(byte dimension, double qx, double qy, double qz) {
+            return dimension == 0 ? qx : dimension == 1 ? qy : qz;
+        }
+
+        private void swap(int i, int j) {
+            Airport airport = airports[i]; airports[i] = airports[j]; airports[j] = airport;
+            double t = x[i]; x[i] = x[j]; x[j] = t;
+            t = y[i]; y[i] = y[j]; y[j] = t;
+            t = z[i]; z[i] = z[j]; z[j] = t;
+        }
+    }
+
+    // Max-heap of tree positions keyed by squared chord, holding the closest ones seen so far
+    static final class Neighbours {
+
+        final int capacity;
+        final int[] positions;
+        final double[] keys;
+        int size;
+
+        Neighbours(int capacity) {
+            this.capacity = capacity;
+            positions = new int[capacity];
+            keys = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        double worst() {
+            return keys[0];
+        }
+
+        void offer(int position, double key) {
+            if (size < capacity) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (keys[parent] >= key)
+                        break;
+                    positions[i] = positions[parent];
+                    keys[i] = keys[parent];
+                    i = parent;
+                }
+                positions[i] = position;
+                keys[i] = key;
+            } else if (key < keys[0])
+                siftDown(position, key);
+        }
+
+        int poll() {
+            int head = positions[0];
+            size--;
+            if (size > 0)
+                siftDown(positions[size], keys[size]);
+            return head;
+        }
+
+        private void siftDown(int position, double key) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && keys[child + 1] > keys[child])
+                    child++;
+                if (keys[child] <= key)
+                    break;
+                positions[i] = positions[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            positions[i] = position;
+            keys[i] = key;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.timeseries;
+
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ *  Chunk
+ *
+ *  Columnar block of consecutive readings of one series. Timestamps are kept as deltas from
+ *  the previous one, the rest as one primitive array per field. Once full it is sealed into
+ *  a segment file whose header alone is enough to index it.
+ */
+final class Chunk {
+
+    private static final int MAGIC = 0x57545331;
+
+    private final long[] deltas;
+    private final long[] sequences;
+    private final double[] means;
+    private final int[] firsts;
+    private final int[] seconds;
+    private final int[] thirds;
+    private final int[] counts;
+
+    private int size;
+    private long first;
+    private long last;
+
+    Chunk(int capacity) {
+        deltas = new long[capacity];
+        sequences = new long[capacity];
+        means = new double[capacity];
+        firsts = new int[capacity];
+        seconds = new int[capacity];
+        thirds = new int[capacity];
+        counts = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == deltas.length;
+    }
+
+    long first() {
+        return first;
+    }
+
+    long last() {
+        return last;
+    }
+
+    /**
+     * Timestamps must not go back
+     */
+    void append(long timestamp, long sequence, DataPoint dataPoint) {
+        if (size == 0)
+            first = last = timestamp;
+
+        deltas[size] = timestamp - last;
+        sequences[size] = sequence;
+        means[size] = dataPoint.getMean();
+        firsts[size] = dataPoint.getFirst();
+        seconds[size] = dataPoint.getSecond();
+        thirds[size] = dataPoint.getThird();
+        counts[size] = dataPoint.getCount();
+
+        last = timestamp;
+        size++;
+    }
+
+    Sample latest(IATA iata, DataPointType type) {
+        int i = size - 1;
+        return new Sample(iata, type, last, sequences[i], means[i], firsts[i], seconds[i], thirds[i], counts[i]);
+    }
+
+    long lastSequence() {
+        return sequences[size - 1];
+    }
+
+    int countSince(long timestamp) {
+        int count = 0;
+        long current = last;
+        for (int i = size - 1; i >= 0 && current >= timestamp; i--) {
+            count++;
+            current -= deltas[i];
+        }
+        return count;
+    }
+
+    void writeTo(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            Header.write(out, size, first, last, lastSequence());
+            for (int i = 0; i < size; i++) out.writeLong(deltas[i]);
+            for (int i = 0; i < size; i++) out.writeLong(sequences[i]);
+            for (int i = 0; i < size; i++) out.writeDouble(means[i]);
+            for (int i = 0; i < size; i++) out.writeInt(firsts[i]);
+            for (int i = 0; i < size; i++) out.writeInt(seconds[i]);
+            for (int i = 0; i < size; i++) out.writeInt(thirds[i]);
+            for (int i = 0; i < size; i++) out.writeInt(counts[i]);
+        }
+    }
+
+    static Chunk readFrom(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            Header header = Header.read(in, path);
+            Chunk chunk = new Chunk(header.size);
+            for (int i = 0; i < header.size; i++) chunk.deltas[i] = in.readLong();
+            for (int i = 0; i < header.size; i++) chunk.sequences[i] = in.readLong();
+            for (int i = 0; i < header.size; i++) chunk.means[i] = in.readDouble();
+            for (int i = 0; i < header.size; i++) chunk.firsts[i] = in.readInt();
+            for (int i = 0; i < header.size; i++) chunk.seconds[i] = in.readInt();
+            for (int i = 0; i < header.size; i++) chunk.thirds[i] = in.readInt();
+            for (int i = 0; i < header.size; i++) chunk.counts[i] = in.readInt();
+            chunk.size = header.size;
+            chunk.first = header.first;
+            chunk.last = header.last;
+            return chunk;
+        }
+    }
+
+    static final class Header {
+
+        final int size;
+        final long first;
+        final long last;
+        final long lastSequence;
+
+        private Header(int size, long first, long last, long lastSequence) {
+            this.size = size;
+            this.first = first;
+            this.last = last;
+            this.lastSequence = lastSequence;
+        }
+
+        static Header read(Path path) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                return read(in, path);
+            }
+        }
+
+        private static Header read(DataInputStream in, Path path) throws IOException {
+            if (in.readInt() != MAGIC)
+                throw new IOException(path + " is not a segment file");
+            return new Header(in.readInt(), in.readLong(), in.readLong(), in.readLong());
+        }
+
+        private static void write(DataOutputStream out, int size, long first, long last, long lastSequence) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(size);
+            out.writeLong(first);
+            out.writeLong(last);
+            out.writeLong(lastSequence);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.timeseries;
+
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+
+/**
+ *  Sample
+ *
+ *  One reading of a series as it comes out of the {@link TimeSeriesStore}
+ */
+public final class Sample {
+
+    private final IATA iata;
+    private final DataPointType type;
+    private final long timestamp;
+    private final long sequence;
+    private final double mean;
+    private final int first;
+    private final int second;
+    private final int third;
+    private final int count;
+
+    Sample(IATA iata, DataPointType type, long timestamp, long sequence,
+           double mean, int first, int second, int third, int count) {
+        this.iata = iata;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+        this.mean = mean;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+        this.count = count;
+    }
+
+    public IATA getIata() {
+        return iata;
+    }
+
+    public DataPointType getType() {
+        return type;
+    }
+
+    /**
+     * Milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public DataPoint toDataPoint() {
+        return new DataPoint.Builder()
+                .withType(type)
+                .withMean(mean)
+                .withFirst(first)
+                .withSecond(second)
+                .withThird(third)
+                .withCount(count)
+                .build();
+    }
+}
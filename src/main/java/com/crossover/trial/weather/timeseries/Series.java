@@ -0,0 +1,175 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.timeseries;
+
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Series
+ *
+ *  Readings of one airport and data point type: the sealed segments on disk, in order, and
+ *  the chunk being filled. The last sealed chunk stays in memory to answer for the latest
+ *  reading right after a seal. Callers synchronize on the series.
+ */
+final class Series {
+
+    static final String EXTENSION = ".seg";
+
+    private final IATA iata;
+    private final DataPointType type;
+    private final Path directory;
+    private final int capacity;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private Chunk active;
+    private Chunk tail;
+    private int nextSegment;
+    private boolean deleted;
+
+    Series(IATA iata, DataPointType type, Path directory, int capacity) {
+        this.iata = iata;
+        this.type = type;
+        this.directory = directory;
+        this.capacity = capacity;
+    }
+
+    static String fileName(IATA iata, DataPointType type, int index) {
+        return String.format("%s.%s.%08d%s", iata, type, index, EXTENSION);
+    }
+
+    /**
+     * Segments have to be recovered in file order
+     */
+    void recover(Path path, int index) throws IOException {
+        segments.add(new Segment(path, Chunk.Header.read(path)));
+        nextSegment = index + 1;
+    }
+
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty() && (active == null || active.size() == 0);
+    }
+
+    long lastSequence() {
+        if (active != null && active.size() > 0)
+            return active.lastSequence();
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).header.lastSequence;
+    }
+
+    Sample append(long now, long sequence, DataPoint dataPoint) throws IOException {
+        if (active == null)
+            active = new Chunk(capacity);
+
+        // Keeps deltas positive when the clock goes back
+        long timestamp = isEmpty() ? now : Math.max(now, lastTimestamp());
+        active.append(timestamp, sequence, dataPoint);
+        Sample sample = active.latest(iata, type);
+
+        if (active.isFull())
+            seal();
+
+        return sample;
+    }
+
+    Sample latest() throws IOException {
+        if (active != null && active.size() > 0)
+            return active.latest(iata, type);
+        if (tail == null && !segments.isEmpty())
+            tail = Chunk.readFrom(segments.get(segments.size() - 1).path);
+        return tail == null ? null : tail.latest(iata, type);
+    }
+
+    long countSince(long timestamp) throws IOException {
+        long count = 0;
+        if (active != null && active.size() > 0) {
+            count += active.countSince(timestamp);
+            if (active.first() < timestamp)
+                return count;
+        }
+
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Chunk.Header header = segments.get(i).header;
+            if (header.first >= timestamp)
+                count += header.size;
+            else {
+                // Only the segment straddling the window is read back
+                if (header.last >= timestamp)
+                    count += Chunk.readFrom(segments.get(i).path).countSince(timestamp);
+                break;
+            }
+        }
+        return count;
+    }
+
+    void seal() throws IOException {
+        if (active == null || active.size() == 0)
+            return;
+
+        Path path = directory.resolve(fileName(iata, type, nextSegment));
+        Path temporary = directory.resolve(path.getFileName() + ".tmp");
+        active.writeTo(temporary);
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+
+        segments.add(new Segment(path, Chunk.Header.read(path)));
+        tail = active;
+        active = null;
+        nextSegment++;
+    }
+
+    void delete() throws IOException {
+        for (Segment segment : segments)
+            Files.deleteIfExists(segment.path);
+        segments.clear();
+        active = tail = null;
+        deleted = true;
+    }
+
+    private long lastTimestamp() {
+        if (active != null && active.size() > 0)
+            return active.last();
+        return segments.get(segments.size() - 1).header.last;
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final Chunk.Header header;
+
+        Segment(Path path, Chunk.Header header) {
+            this.path = path;
+            this.header = header;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.timeseries;
+
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ *  Time Series Store
+ *
+ *  Append-only measurement storage, one {@link Series} per airport and data point type in a
+ *  flat table indexed by airport. Readings are appended to columnar chunks that are sealed
+ *  into segment files under the configured directory once full, and on shutdown. Readings in a
+ *  chunk that is not sealed yet live in memory only and are lost on a crash. Each reading
+ *  gets the next sequence of its airport. Segments found on start up are indexed by their
+ *  header, only the chunks needed to answer a query are read back.
+ */
+@Component
+@ConditionalOnProperty(name="weather.measurements.storage", havingValue="timeseries")
+public class TimeSeriesStore {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    @Value("${weather.measurements.timeseries.directory:data/timeseries}") String directory;
+    @Value("${weather.measurements.timeseries.chunk-size:1024}") int chunkSize;
+
+    LongSupplier clock = System::currentTimeMillis;
+
+    private final AtomicReferenceArray<Series> series = new AtomicReferenceArray<>(IATA.CARDINALITY * TYPES.length);
+    private final AtomicLongArray sequences = new AtomicLongArray(IATA.CARDINALITY);
+
+    private Path root;
+
+    @PostConstruct
+    public void open() throws IOException {
+        Assert.isTrue(chunkSize > 0, "weather.measurements.timeseries.chunk-size must be positive");
+
+        root = Files.createDirectories(Paths.get(directory));
+
+        // File names sort segments of a series in the order they were sealed
+        TreeMap<String, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(root, "*" + Series.EXTENSION)) {
+            paths.forEach(path -> files.put(path.getFileName().toString(), path));
+        }
+
+        for (Path path : files.values()) {
+            String[] parts = path.getFileName().toString().split("\\.");
+            IATA iata = IATA.valueOf(parts[0]);
+            DataPointType type = DataPointType.valueOf(parts[1]);
+
+            Series recovered = series(iata, type);
+            recovered.recover(path, Integer.parseInt(parts[2]));
+            sequences.accumulateAndGet(iata.toIndex(), recovered.lastSequence(), Math::max);
+        }
+
+        log.info("Recovered {} measurement segments from {}", files.size(), root.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (int slot = 0; slot < series.length(); slot++) {
+            Series current = series.get(slot);
+            if (current != null)
+                synchronized (current) {
+                    current.seal();
+                }
+        }
+    }
+
+    public Sample append(IATA iata, DataPoint dataPoint) {
+        Assert.isTrue(iata != null, "iata is required");
+        Assert.isTrue(dataPoint != null, "dataPoint is required");
+
+        while (true) {
+            Series current = series(iata, dataPoint.getType());
+            synchronized (current) {
+                if (current.isDeleted())
+                    continue;
+
+                try {
+                    return current.append(clock.getAsLong(), sequences.incrementAndGet(iata.toIndex()), dataPoint);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    public Sample latest(IATA iata, DataPointType type) {
+        Assert.isTrue(iata != null, "iata is required");
+        Assert.isTrue(type != null, "type is required");
+
+        return latest(series.get(slot(iata, type)));
+    }
+
+    public List<Sample> latest() {
+        List<Sample> latest = new ArrayList<>();
+        for (int slot = 0; slot < series.length(); slot++) {
+            Sample sample = latest(series.get(slot));
+            if (sample != null)
+                latest.add(sample);
+        }
+        return latest;
+    }
+
+    /**
+     * Number of readings at or after the given time, in milliseconds since the epoch
+     */
+    public long countSince(long timestamp) {
+        long count = 0;
+        for (int slot = 0; slot < series.length(); slot++) {
+            Series current = series.get(slot);
+            if (current == null)
+                continue;
+
+            synchronized (current) {
+                try {
+                    count += current.countSince(timestamp);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return count;
+    }
+
+    public void delete(IATA iata) {
+        Assert.isTrue(iata != null, "iata is required");
+
+        for (DataPointType type : TYPES) {
+            Series deleted = series.getAndSet(slot(iata, type), null);
+            if (deleted == null)
+                continue;
+
+            synchronized (deleted) {
+                try {
+                    deleted.delete();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private Sample latest(Series current) {
+        if (current == null)
+            return null;
+
+        synchronized (current) {
+            try {
+                return current.latest();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Series series(IATA iata, DataPointType type) {
+        int slot = slot(iata, type);
+        Series current = series.get(slot);
+        while (current == null) {
+            series.compareAndSet(slot, null, new Series(iata, type, root, chunkSize));
+            current = series.get(slot);
+        }
+        return current;
+    }
+
+    private static int slot(IATA iata, DataPointType type) {
+        return iata.toIndex() * TYPES.length + type.ordinal();
+    }
+}
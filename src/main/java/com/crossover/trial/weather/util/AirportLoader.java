@@ -22,9 +22,11 @@
  */
 package com.crossover.trial.weather.util;
 
+import com.crossover.trial.weather.cache.WeatherResponseCache;
 import com.crossover.trial.weather.domain.Airport;
 import com.crossover.trial.weather.domain.AirportRepository;
 import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.AirportIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,6 +36,8 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import static org.springframework.util.StringUtils.hasText;
@@ -44,6 +48,8 @@ public class AirportLoader implements ApplicationRunner {
     private static final Logger log = LoggerFactory.getLogger(AirportLoader.class);
 
     @Autowired AirportRepository airportRepository;
+    @Autowired AirportIndex airportIndex;
+    @Autowired WeatherResponseCache responseCache;
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
@@ -52,14 +58,21 @@ public class AirportLoader implements ApplicationRunner {
             if (dataFile.canRead() && dataFile.isFile() && dataFile.exists()) {
                 log.info("Loading airports from [{}]", dataFile);
 
+                // A durable database already holds the airports of previous runs
+                Map<IATA, Airport> stored = new HashMap<>();
+                airportRepository.findAll().forEach(airport -> stored.put(airport.getIata(), airport));
+
                 try (Stream<String> lines = Files.lines(dataFile.toPath())) {
                     lines.map(Row::new)
                          .filter(Row::expectedTotalColumns)
                          .filter(Row::expectedColumnsFilled)
                          .map(Row::parse)
                          .filter(airport -> airport != null)
-                         .forEach(airportRepository::save);
+                         .filter(airport -> !sameLocation(stored.get(airport.getIata()), airport))
+                         .map(airportRepository::save)
+                         .forEach(airportIndex::put);
                 }
+                responseCache.invalidateAll();
 
             } else
                 log.error("Specified airports data file is not readable [{}]", dataFile.toPath());
@@ -67,6 +80,12 @@ public class AirportLoader implements ApplicationRunner {
         }
     }
 
+    private static boolean sameLocation(Airport stored, Airport airport) {
+        return stored != null &&
+               stored.getLatitude() == airport.getLatitude() &&
+               stored.getLongitude() == airport.getLongitude();
+    }
+
     static class Row {
 
         static final int IATA_COLUMN = 4;
@@ -22,9 +22,15 @@
  */
 package com.crossover.trial.weather;
 
+import com.crossover.trial.weather.domain.ConcurrentWritesTest;
 import com.crossover.trial.weather.domain.DomainRepositoryTest;
+import com.crossover.trial.weather.domain.DurableStorageTest;
+import com.crossover.trial.weather.domain.TimeSeriesDataPointRepositoryTest;
 import com.crossover.trial.weather.endpoint.RestWeatherCollectorEndpointTest;
 import com.crossover.trial.weather.endpoint.RestWeatherQueryEndpointTest;
+import com.crossover.trial.weather.ingest.BinaryIngestionServerTest;
+import com.crossover.trial.weather.retention.RetentionJobTest;
+import com.crossover.trial.weather.spatial.DatabaseAirportIndexTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
@@ -32,6 +38,12 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
         DomainRepositoryTest.class,
         RestWeatherQueryEndpointTest.class,
-        RestWeatherCollectorEndpointTest.class
+        RestWeatherCollectorEndpointTest.class,
+        DatabaseAirportIndexTest.class,
+        BinaryIngestionServerTest.class,
+        RetentionJobTest.class,
+        TimeSeriesDataPointRepositoryTest.class,
+        DurableStorageTest.class,
+        ConcurrentWritesTest.class
 })
 public class IntegrationTestSuite {}
@@ -24,7 +24,20 @@ package com.crossover.trial.weather;
 
 import com.crossover.trial.weather.domain.AirportTest;
 import com.crossover.trial.weather.domain.DataPointTest;
+import com.crossover.trial.weather.endpoint.NdjsonReaderTest;
+import com.crossover.trial.weather.ingest.AdmissionControlTest;
+import com.crossover.trial.weather.ingest.CoalescingIngestionTest;
+import com.crossover.trial.weather.ingest.RingBufferTest;
+import com.crossover.trial.weather.ingest.SequenceHighWaterMarksTest;
+import com.crossover.trial.weather.ingest.WriteBehindIngestionTest;
+import com.crossover.trial.weather.metrics.MeasurementCounterTest;
 import com.crossover.trial.weather.metrics.MetricsServiceTest;
+import com.crossover.trial.weather.spatial.DistanceKernelTest;
+import com.crossover.trial.weather.spatial.GridAirportIndexTest;
+import com.crossover.trial.weather.spatial.NeighbourListAirportIndexTest;
+import com.crossover.trial.weather.spatial.SphereTreeAirportIndexTest;
+import com.crossover.trial.weather.timeseries.TimeSeriesStoreTest;
+import com.crossover.trial.weather.util.AirportLoaderTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
@@ -32,6 +45,19 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
         AirportTest.class,
         DataPointTest.class,
-        MetricsServiceTest.class
+        MetricsServiceTest.class,
+        MeasurementCounterTest.class,
+        GridAirportIndexTest.class,
+        SphereTreeAirportIndexTest.class,
+        NeighbourListAirportIndexTest.class,
+        DistanceKernelTest.class,
+        RingBufferTest.class,
+        WriteBehindIngestionTest.class,
+        SequenceHighWaterMarksTest.class,
+        CoalescingIngestionTest.class,
+        AdmissionControlTest.class,
+        TimeSeriesStoreTest.class,
+        AirportLoaderTest.class,
+        NdjsonReaderTest.class
 })
 public class UnitTestSuite {}
@@ -89,7 +89,7 @@ public class AirportTest {
                 equalTo(jfk.calculateDistance(gig)));
 
         assertThat(gig.calculateDistance(jfk),
-                equalTo(7703.945145479768));
+                equalTo(7731.689322399292));
 
         assertThat(gig.calculateDistance(gig),
                 equalTo(0D));
@@ -0,0 +1,156 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.domain;
+
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+/**
+ *  Concurrent Writes Test
+ *
+ *  Runs a mix of one measurement write to four latest measurement reads, each in its own
+ *  transaction, from as many threads as the pool has connections, and checks that no write was
+ *  lost or mixed up with another one.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:context-test.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+public class ConcurrentWritesTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS = 250;
+    private static final int READS_PER_WRITE = 4;
+
+    @Autowired AirportRepository airportRepository;
+    @Autowired DataPointRepository dataPointRepository;
+    @Autowired LatestMeasurementStore latestMeasurements;
+
+    @Autowired EntityManager manager;
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testConcurrentWrites() throws Exception {
+        List<IATA> iatas = StreamSupport.stream(airportRepository.findAll().spliterator(), false)
+                .map(Airport::getIata)
+                .collect(Collectors.toList());
+        long before = countMeasurements();
+
+        List<Measurement> written = run(iatas);
+
+        // Every acknowledged write made it to the table, none was lost to a shared session
+        assertThat(written.size(), equalTo(THREADS * OPERATIONS / (READS_PER_WRITE + 1)));
+        assertThat(countMeasurements() - before, equalTo((long) written.size()));
+        assertThat(written.stream().map(measurement -> measurement.getPoint().getId()).distinct().count(),
+                equalTo((long) written.size()));
+
+        for (IATA iata : iatas) {
+            List<Measurement> ordered = written.stream()
+                    .filter(measurement -> measurement.getAirport().getIata().equals(iata))
+                    .sorted(Comparator.comparing(Measurement::getSequence))
+                    .collect(Collectors.toList());
+            assertThat(ordered.stream().map(Measurement::getSequence).distinct().count(),
+                    equalTo((long) ordered.size()));
+            assertThat(latestMeasurements.findLatest(iata, DataPointType.WIND),
+                    equalTo(ordered.get(ordered.size() - 1)));
+        }
+
+        removeAllData();
+        iatas.forEach(latestMeasurements::remove);
+    }
+
+    private List<Measurement> run(List<IATA> iatas) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<List<Measurement>>> workers = new ArrayList<>();
+        for (int worker = 0; worker < THREADS; worker++) {
+            int offset = worker;
+            workers.add(executor.submit(() -> {
+                List<Measurement> written = new ArrayList<>();
+                for (int operation = 0; operation < OPERATIONS; operation++) {
+                    IATA iata = iatas.get((operation + offset) % iatas.size());
+                    if (operation % (READS_PER_WRITE + 1) == 0)
+                        written.add(createMeasurement(iata, dataPoint()));
+                    else
+                        dataPointRepository.findLatestMeasurementForIata(iata);
+                }
+                return written;
+            }));
+        }
+        executor.shutdown();
+
+        List<Measurement> written = new ArrayList<>();
+        for (Future<List<Measurement>> worker : workers)
+            written.addAll(worker.get());
+        return written;
+    }
+
+    private static DataPoint dataPoint() {
+        return new DataPoint.Builder()
+                .withType(DataPointType.WIND)
+                .withCount(10).withFirst(1)
+                .withSecond(2).withThird(3)
+                .withMean(5)
+                .build();
+    }
+
+    @Transactional
+    protected Measurement createMeasurement(IATA iata, DataPoint dataPoint) {
+        return dataPointRepository.createMeasurement(iata, dataPoint);
+    }
+
+    @Transactional(readOnly=true)
+    protected long countMeasurements() {
+        return manager.createQuery("select count(m) from Measurement m", Long.class).getSingleResult();
+    }
+
+    @Transactional
+    protected void removeAllData() {
+        manager.createQuery("delete from Measurement").executeUpdate();
+        manager.createQuery("delete from DataPoint").executeUpdate();
+    }
+}
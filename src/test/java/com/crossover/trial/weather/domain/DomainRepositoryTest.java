@@ -23,7 +23,10 @@
 package com.crossover.trial.weather.domain;
 
 import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import com.crossover.trial.weather.spatial.AirportIndex;
 import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,8 +38,15 @@ import org.springframework.test.context.transaction.TransactionalTestExecutionLi
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -45,6 +55,7 @@ import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration("classpath:context-test.xml")
@@ -53,11 +64,21 @@ import static org.hamcrest.core.IsNull.notNullValue;
         DbUnitTestExecutionListener.class})
 public class DomainRepositoryTest {
 
+    private static final long MANY_POINTS = 10000000L;
+
     @Autowired AirportRepository airportRepository;
     @Autowired DataPointRepository dataPointRepository;
+    @Autowired AirportIndex airportIndex;
+    @Autowired LatestMeasurementStore latestMeasurements;
 
     @Autowired EntityManager manager;
 
+    @Before
+    public void setup() {
+        // DbUnit writes straight through JDBC, so the index has to be told about it
+        airportIndex.reload(airportRepository.findAll());
+    }
+
     @Test
     @DatabaseSetup("classpath:dbtest/airport_small.xml")
     public void testAirportRepositorySimple() {
@@ -116,7 +137,7 @@ public class DomainRepositoryTest {
                 .spliterator(), false)
         .count();
 
-        assertThat(count, equalTo(429L));
+        assertThat(count, equalTo(135L));
     }
 
     @Test
@@ -153,6 +174,37 @@ public class DomainRepositoryTest {
 
     }
 
+    @Test
+    public void testDataPointPooledIds() {
+        int count = 250;
+        long increment = sequence("increment");
+        long before = sequence("current_value");
+
+        List<DataPoint> dataPoints = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            dataPoints.add(dataPointRepository.save(new DataPoint.Builder()
+                    .withType(DataPointType.CLOUD_COVER)
+                    .withCount(10).withFirst(1)
+                    .withSecond(2).withThird(3)
+                    .withMean(i)
+                    .build()));
+
+        assertThat(dataPoints.stream().map(DataPoint::getId).distinct().count(), equalTo((long) count));
+
+        // Ids are handed out a pool at a time, only a new pool goes to the database sequence
+        long hits = (sequence("current_value") - before) / increment;
+        assertThat(increment, equalTo(100L));
+        assertThat("sequence hit " + hits + " times", hits >= count / increment && hits <= count / increment + 1,
+                equalTo(true));
+
+        dataPointRepository.delete(dataPoints);
+    }
+
+    private long sequence(String column) {
+        return ((Number) manager.createNativeQuery("select " + column + " from information_schema.sequences " +
+                "where sequence_name = 'DATAPOINT_SEQ'").getSingleResult()).longValue();
+    }
+
     @Test
     @DatabaseSetup("classpath:dbtest/airport_small.xml")
     public void testDataPointRepositoryMeasurement() {
@@ -170,6 +222,22 @@ public class DomainRepositoryTest {
                 .getSingleResult(), equalTo(0L));
     }
 
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testDataPointRepositoryMeasurementOutOfRange() {
+        DataPoint dataPoint = new DataPoint.Builder()
+                .withType(DataPointType.PRESSURE)
+                .withCount(10).withFirst(1)
+                .withSecond(2).withThird(3)
+                .withMean(0)
+                .build();
+
+        assertThat(createMeasurement(dataPoint), nullValue());
+        assertThat(dataPoint.getId(), nullValue());
+        assertThat(manager.createQuery("select count(p) from DataPoint p")
+                .getSingleResult(), equalTo(0L));
+    }
+
     @Test
     @DatabaseSetup("classpath:dbtest/airport_small.xml")
     public void testDataPointRepositoryMeasurementFindLatest() {
@@ -186,6 +254,78 @@ public class DomainRepositoryTest {
         remove(m3);
     }
 
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testLatestMeasurementStore() {
+        Measurement m1 = doTestDataPointRepositoryMeasurement();
+        Measurement m2 = doTestDataPointRepositoryMeasurement(DataPointType.HUMIDITY);
+
+        assertThat(latestMeasurements.findLatest(valueOf("BOS")), equalTo(m2));
+        assertThat(latestMeasurements.findLatest(valueOf("BOS"), DataPointType.CLOUD_COVER), equalTo(m1));
+        assertThat(latestMeasurements.findLatest(valueOf("JFK")), nullValue());
+
+        latestMeasurements.reload(dataPointRepository.findLatestMeasurementsByType());
+
+        assertThat(latestMeasurements.findLatest(valueOf("BOS")), equalTo(m2));
+        assertThat(latestMeasurements.findLatest(valueOf("BOS"), DataPointType.CLOUD_COVER), equalTo(m1));
+        assertThat(latestMeasurements.findLatest(valueOf("BOS"), DataPointType.WIND), nullValue());
+
+        remove(m1);
+        remove(m2);
+        latestMeasurements.remove(valueOf("BOS"));
+
+        assertThat(latestMeasurements.findLatest(valueOf("BOS")), nullValue());
+        assertThat(latestMeasurements.findLatest(valueOf("BOS"), DataPointType.HUMIDITY), nullValue());
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testFindLatestMeasurementsByTypeOnManyMeasurements() {
+        List<String> iatas = asList("BOS", "EWR", "JFK", "LGA", "MMU");
+        DataPointType[] types = DataPointType.values();
+        int perAirport = 10000;
+
+        StringBuilder typeName = new StringBuilder("case mod(x, " + types.length + ")");
+        for (DataPointType type : types)
+            typeName.append(" when ").append(type.ordinal()).append(" then '").append(type.name()).append("'");
+        typeName.append(" end");
+
+        try {
+            for (int i = 0; i < iatas.size(); i++) {
+                long base = MANY_POINTS + i * perAirport;
+                update("insert into DATAPOINT (id, mean, first, second, third, count, type) " +
+                        "select " + base + " + x, 0, 1, 2, 3, 10, mod(x, " + types.length + ") " +
+                        "from system_range(1, " + perAirport + ")");
+                update("insert into MEASUREMENT (iata, idPoint, timestamp, sequence, type) " +
+                        "select '" + iatas.get(i) + "', " + base + " + x, ?1, x, " + typeName + " " +
+                        "from system_range(1, " + perAirport + ")", Measurement.timestamp());
+            }
+
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < iatas.size(); i++)
+                for (DataPointType type : types) {
+                    long sequence = perAirport - Math.floorMod(perAirport - type.ordinal(), types.length);
+                    expected.add(iatas.get(i) + ":" + type + ":" + (MANY_POINTS + i * perAirport + sequence));
+                }
+
+            List<String> latest = dataPointRepository.findLatestMeasurementsByType().stream()
+                    .map(m -> m.getAirport().getIata().getCode() + ":" + m.getPoint().getType() + ":" + m.getPoint().getId())
+                    .sorted()
+                    .collect(Collectors.toList());
+            Collections.sort(expected);
+
+            assertThat(latest, equalTo(expected));
+
+            // The measurements are grouped and looked up from the index, not scanned per group
+            String plan = manager.createNativeQuery("explain " + DataPointRepositoryImpl.LATEST_POINTS)
+                    .getSingleResult().toString();
+            assertThat(plan, plan.contains("MEASUREMENT_LATEST"), equalTo(true));
+        } finally {
+            update("delete from MEASUREMENT where idPoint > " + MANY_POINTS);
+            update("delete from DATAPOINT where id > " + MANY_POINTS);
+        }
+    }
+
     @Test
     @DatabaseSetup("classpath:dbtest/airport_small.xml")
     public void testDataPointRepositoryMeasurementCountTimeWindow() {
@@ -204,16 +344,100 @@ public class DomainRepositoryTest {
         remove(m3);
     }
 
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testConcurrentMeasurementsKeepOrder() throws Exception {
+        List<IATA> iatas = asList(valueOf("BOS"), valueOf("JFK"));
+        DataPoint dataPoint = new DataPoint.Builder()
+                .withType(DataPointType.HUMIDITY)
+                .withCount(10).withFirst(1)
+                .withSecond(2).withThird(3)
+                .withMean(0)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<Measurement>>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 8; writer++) {
+            IATA iata = iatas.get(writer % iatas.size());
+            writers.add(executor.submit(() -> {
+                List<Measurement> acknowledged = new ArrayList<>();
+                for (int write = 0; write < 50; write++) {
+                    Measurement measurement = createMeasurement(iata, copy(dataPoint));
+                    acknowledged.add(measurement);
+
+                    // Whatever is read after the acknowledgement is at least as new as it
+                    Measurement latest = latestMeasurements.findLatest(iata, DataPointType.HUMIDITY);
+                    assertThat(latest.equals(measurement) || latest.isNewerThan(measurement), equalTo(true));
+                }
+                return acknowledged;
+            }));
+        }
+        executor.shutdown();
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (Future<List<Measurement>> writer : writers)
+            measurements.addAll(writer.get());
+
+        for (IATA iata : iatas) {
+            List<Measurement> ordered = measurements.stream()
+                    .filter(measurement -> measurement.getAirport().getIata().equals(iata))
+                    .sorted(Comparator.comparing(Measurement::getSequence))
+                    .collect(Collectors.toList());
+            for (int i = 1; i < ordered.size(); i++) {
+                assertThat(ordered.get(i).getSequence() > ordered.get(i - 1).getSequence(), equalTo(true));
+                assertThat(ordered.get(i).getTimestamp().isBefore(ordered.get(i - 1).getTimestamp()), equalTo(false));
+            }
+
+            Measurement last = ordered.get(ordered.size() - 1);
+            assertThat(latestMeasurements.findLatest(iata, DataPointType.HUMIDITY), equalTo(last));
+            assertThat(dataPointRepository.findLatestMeasurementForIata(iata), equalTo(last));
+        }
+
+        measurements.forEach(this::remove);
+        iatas.forEach(latestMeasurements::remove);
+    }
+
+    private static DataPoint copy(DataPoint dataPoint) {
+        return new DataPoint.Builder()
+                .withType(dataPoint.getType())
+                .withCount(dataPoint.getCount()).withFirst(dataPoint.getFirst())
+                .withSecond(dataPoint.getSecond()).withThird(dataPoint.getThird())
+                .withMean(dataPoint.getMean())
+                .build();
+    }
+
+    @Transactional
+    protected void update(String sql, Object... parameters) {
+        Query query = manager.createNativeQuery(sql);
+        for (int i = 0; i < parameters.length; i++)
+            query.setParameter(i + 1, parameters[i]);
+        query.executeUpdate();
+    }
+
     @Transactional
     protected void remove(Measurement measurement) {
         measurement = manager.find(Measurement.class, measurement.getId());
         manager.remove(measurement);
     }
 
-    @Transactional
     protected Measurement doTestDataPointRepositoryMeasurement() {
+        return doTestDataPointRepositoryMeasurement(DataPointType.CLOUD_COVER);
+    }
+
+    @Transactional
+    protected Measurement createMeasurement(DataPoint dataPoint) {
+        return createMeasurement(valueOf("BOS"), dataPoint);
+    }
+
+    @Transactional
+    protected Measurement createMeasurement(IATA iata, DataPoint dataPoint) {
+        return dataPointRepository.createMeasurement(iata, dataPoint);
+    }
+
+    @Transactional
+    protected Measurement doTestDataPointRepositoryMeasurement(DataPointType type) {
         DataPoint dataPoint = new DataPoint.Builder()
-                .withType(DataPointType.CLOUD_COVER)
+                .withType(type)
                 .withCount(10).withFirst(1)
                 .withSecond(2).withThird(3)
                 .withMean(0)
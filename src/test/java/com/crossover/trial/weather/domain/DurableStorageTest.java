@@ -0,0 +1,137 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.domain;
+
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.aspectj.AnnotationTransactionAspect;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.notNullValue;
+
+/**
+ *  Durable Storage Test
+ *
+ *  Boots the test context twice on the same H2 file with the settings of the durable profile,
+ *  the second one has to find what the first one stored. The transaction aspect is woven once
+ *  per JVM and caches its transaction manager, so each context gets it for itself and the
+ *  shared test context gets it back afterwards.
+ */
+public class DurableStorageTest {
+
+    private static final File DIRECTORY = new File("target/durable-test");
+    private static final IATA BOS = IATA.valueOf("BOS");
+
+    private final AnnotationTransactionAspect aspect = AnnotationTransactionAspect.aspectOf();
+
+    private BeanFactory beanFactory;
+    private Map<Object, Object> transactionManagers;
+
+    @Before
+    public void setup() {
+        FileSystemUtils.deleteRecursively(DIRECTORY);
+
+        beanFactory = (BeanFactory) ReflectionTestUtils.getField(aspect, "beanFactory");
+        transactionManagers = new HashMap<>(transactionManagerCache());
+    }
+
+    @After
+    public void tearDown() {
+        aspect.setBeanFactory(beanFactory);
+        transactionManagerCache().clear();
+        transactionManagerCache().putAll(transactionManagers);
+    }
+
+    @Test
+    public void testRestartKeepsData() throws Exception {
+        Measurement stored;
+        try (GenericXmlApplicationContext context = durableContext()) {
+            AirportRepository airportRepository = context.getBean(AirportRepository.class);
+            DataPointRepository dataPointRepository = context.getBean(DataPointRepository.class);
+
+            Airport airport = airportRepository.save(new Airport.Builder()
+                    .withIata(BOS)
+                    .withLatitude(42.364347)
+                    .withLongitude(-71.005181)
+                    .build());
+            stored = new TransactionTemplate(context.getBean(PlatformTransactionManager.class))
+                    .execute(status -> dataPointRepository.createMeasurement(airport, new DataPoint.Builder()
+                            .withType(DataPointType.WIND)
+                            .withMean(5)
+                            .withFirst(1).withSecond(2).withThird(3)
+                            .withCount(4)
+                            .build()));
+        }
+
+        try (GenericXmlApplicationContext context = durableContext()) {
+            AirportRepository airportRepository = context.getBean(AirportRepository.class);
+            DataPointRepository dataPointRepository = context.getBean(DataPointRepository.class);
+
+            assertThat(airportRepository.findOne(BOS), notNullValue());
+
+            Measurement latest = dataPointRepository.findLatestMeasurementForIata(BOS);
+            assertThat(latest.getSequence(), equalTo(stored.getSequence()));
+            assertThat(latest.getPoint().getMean(), equalTo(5.0));
+
+            // Warmed up from the file, not rebuilt
+            assertThat(context.getBean(LatestMeasurementStore.class).findLatest(BOS, DataPointType.WIND)
+                    .getSequence(), equalTo(stored.getSequence()));
+        }
+    }
+
+    private GenericXmlApplicationContext durableContext() throws IOException {
+        GenericXmlApplicationContext context = new GenericXmlApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(
+                new ResourcePropertySource("classpath:application-durable.properties"));
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test",
+                Collections.singletonMap("weather.datasource.file", "./" + DIRECTORY + "/weather")));
+        context.load("classpath:context-test.xml");
+
+        transactionManagerCache().clear();
+        context.refresh();
+        transactionManagerCache().clear();
+        return context;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> transactionManagerCache() {
+        return (Map<Object, Object>) ReflectionTestUtils.getField(aspect, "transactionManagerCache");
+    }
+}
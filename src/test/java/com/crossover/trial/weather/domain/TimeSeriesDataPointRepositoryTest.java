@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.domain;
+
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import static com.crossover.trial.weather.domain.IATA.valueOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:context-test.xml")
+@TestPropertySource(properties={
+        "weather.measurements.storage=timeseries",
+        "weather.measurements.timeseries.directory=target/timeseries-test",
+        "weather.datasource.url=jdbc:h2:mem:timeseries;DB_CLOSE_DELAY=-1;MVCC=TRUE"})
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+public class TimeSeriesDataPointRepositoryTest {
+
+    private static final IATA BOS = valueOf("BOS");
+    private static final IATA JFK = valueOf("JFK");
+
+    @Autowired DataPointRepository dataPointRepository;
+    @Autowired LatestMeasurementStore latestMeasurements;
+
+    @Before
+    public void setup() {
+        // Segments sealed by an earlier run are recovered on start up
+        dataPointRepository.deleteAllMeasurements(BOS);
+        dataPointRepository.deleteAllMeasurements(JFK);
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testCreateAndFindLatest() {
+        assertThat(dataPointRepository.createMeasurement(BOS, dataPoint(DataPointType.WIND, 10)), notNullValue());
+        Measurement latest = dataPointRepository.createMeasurement(BOS, dataPoint(DataPointType.HUMIDITY, 20));
+        assertThat(dataPointRepository.createMeasurement(JFK, dataPoint(DataPointType.WIND, 30)), notNullValue());
+
+        assertThat(latest.getAirport().getIata(), equalTo(BOS));
+        assertThat(latest.getPoint().getMean(), equalTo(20.0));
+        assertThat(dataPointRepository.findLatestMeasurementForIata(BOS).getSequence(), equalTo(latest.getSequence()));
+        assertThat(latestMeasurements.findLatest(BOS, DataPointType.HUMIDITY).getSequence(), equalTo(latest.getSequence()));
+
+        assertThat(dataPointRepository.findLatestMeasurementForIata(JFK).getPoint().getMean(), equalTo(30.0));
+        assertThat(dataPointRepository.findLatestMeasurementsByType().size(), equalTo(3));
+
+        // Out of range readings and unknown airports are not stored
+        assertThat(dataPointRepository.createMeasurement(BOS, dataPoint(DataPointType.HUMIDITY, 200)), nullValue());
+        assertThat(dataPointRepository.createMeasurement(valueOf("ZZZ"), dataPoint(DataPointType.WIND, 10)), nullValue());
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testCountAndDelete() {
+        dataPointRepository.createMeasurement(BOS, dataPoint(DataPointType.WIND, 10));
+        dataPointRepository.createMeasurement(BOS, dataPoint(DataPointType.WIND, 11));
+        dataPointRepository.createMeasurement(JFK, dataPoint(DataPointType.WIND, 12));
+
+        assertThat(dataPointRepository.countTotalMeasurementsInLastTimeWindow(Measurement.timestamp()
+                .minusDays(1)), equalTo(3L));
+        assertThat(dataPointRepository.countTotalMeasurementsInLastTimeWindow(Measurement.timestamp()
+                .plusMinutes(1)), equalTo(0L));
+
+        dataPointRepository.deleteAllMeasurements(BOS);
+
+        assertThat(dataPointRepository.findLatestMeasurementForIata(BOS), nullValue());
+        assertThat(latestMeasurements.findLatest(BOS), nullValue());
+        assertThat(dataPointRepository.findLatestMeasurementForIata(JFK), notNullValue());
+        assertThat(dataPointRepository.countTotalMeasurementsInLastTimeWindow(Measurement.timestamp()
+                .minusDays(1)), equalTo(1L));
+    }
+
+    private static DataPoint dataPoint(DataPointType type, double mean) {
+        return new DataPoint.Builder()
+                .withType(type)
+                .withCount(10).withFirst(1)
+                .withSecond(2).withThird(3)
+                .withMean(mean)
+                .build();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.endpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class NdjsonReaderTest {
+
+    private static final int MAX_RECORD_BYTES = 256;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testRecords() throws IOException {
+        assertThat(read(
+                "{\"iata\":\"BOS\",\"mean\":1.0}\n" +
+                "\n" +
+                "  {\"iata\":\"JFK\",\"mean\":2.0}\n" +
+                "{\"iata\":\"EWR\",\"mean\":3.0}{\"iata\":\"LGA\",\"mean\":4.0}"),
+            equalTo(Arrays.asList("1:BOS", "3:JFK", "4:EWR", "4:LGA")));
+    }
+
+    @Test
+    public void testMalformedRecordsResumeOnTheNextLine() throws IOException {
+        assertThat(read(
+                "{\"iata\":\"BOS\",\"mean\":1.0}\n" +
+                "{\"iata\":\"JFK\",\"mean\":\n" +
+                "{\"iata\":\"EWR\",\"mean\":\"x\"}\n" +
+                "{\"iata\":\"LGA\n" +
+                "xyz\n" +
+                "null\n" +
+                "42 {\"iata\":\"MMU\",\"mean\":2.0}\n" +
+                "{\"iata\":\"BDL\",\"mean\":3.0}\n"),
+            equalTo(Arrays.asList(
+                    "1:BOS",
+                    "2:" + NdjsonReader.MALFORMED,
+                    "3:" + NdjsonReader.MALFORMED,
+                    "4:" + NdjsonReader.MALFORMED,
+                    "5:" + NdjsonReader.MALFORMED,
+                    "6:" + NdjsonReader.MALFORMED,
+                    "7:" + NdjsonReader.MALFORMED,
+                    "8:BDL")));
+    }
+
+    @Test
+    public void testOverLongRecordIsSkippedWithoutReadingItWhole() throws IOException {
+        // Far more than the parser reads ahead, and far more than the limit
+        byte[] filler = new byte[4 * 1024 * 1024];
+        Arrays.fill(filler, (byte) 'x');
+
+        InputStream body = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                stream("{\"iata\":\"BOS\",\"mean\":1.0}\n{\"iata\":\""),
+                new ByteArrayInputStream(filler),
+                stream("\",\"mean\":2.0}\n" +
+                        "{\"iata\":\"JFK\",\"mean\":3.0}\n" +
+                        "{\"iata\":\"LGA\"" + String.join("", Collections.nCopies(MAX_RECORD_BYTES, " ")) + "}\n" +
+                        "{\"iata\":\"EWR\",\"mean\":4.0}\n"))));
+
+        assertThat(read(body), equalTo(Arrays.asList(
+                "1:BOS",
+                "2:" + NdjsonReader.TOO_LONG,
+                "3:JFK",
+                "4:" + NdjsonReader.TOO_LONG,
+                "5:EWR")));
+    }
+
+    @Test
+    public void testRecordOfExactlyTheLimit() throws IOException {
+        String record = "{\"iata\":\"BOS\",\"mean\":1.0}";
+        String padded = record.substring(0, record.length() - 1) +
+                String.join("", Collections.nCopies(MAX_RECORD_BYTES - record.length(), " ")) + "}";
+
+        assertThat(read(padded + "\n" + padded + "\n" + padded),
+            equalTo(Arrays.asList("1:BOS", "2:BOS", "3:BOS")));
+    }
+
+    private List<String> read(String body) throws IOException {
+        return read(stream(body));
+    }
+
+    private List<String> read(InputStream body) throws IOException {
+        NdjsonReader<Reading> reader = new NdjsonReader<>(mapper, Reading.class, body, MAX_RECORD_BYTES);
+
+        List<String> records = new ArrayList<>();
+        for (NdjsonReader.Record<Reading> record; (record = reader.next()) != null; )
+            records.add(record.line + ":" + (record.value == null ? record.error : record.value.iata));
+        return records;
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static class Reading {
+        public String iata;
+        public Double mean;
+    }
+}
@@ -22,8 +22,14 @@
  */
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.DataPointType;
 import com.crossover.trial.weather.domain.DomainRepositoryTest;
+import com.crossover.trial.weather.domain.IATA;
 import com.crossover.trial.weather.domain.Measurement;
+import com.crossover.trial.weather.ingest.AdmissionControl;
+import com.crossover.trial.weather.ingest.SequenceHighWaterMarks;
+import com.crossover.trial.weather.spatial.AirportIndex;
 import com.crossover.trial.weather.util.DataPointTypeConverter;
 import com.crossover.trial.weather.util.iata.IATASpringConverter;
 import com.github.springtestdbunit.DbUnitTestExecutionListener;
@@ -44,6 +50,8 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.List;
 
 import static com.crossover.trial.weather.domain.IATA.valueOf;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -53,6 +61,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -67,17 +76,28 @@ public class RestWeatherCollectorEndpointTest {
     @Autowired RestWeatherCollectorEndpoint endpoint;
     @Autowired EntityManager manager;
 
+    @Autowired AirportRepository airportRepository;
+    @Autowired AirportIndex airportIndex;
+    @Autowired SequenceHighWaterMarks highWaterMarks;
+
     @Before
     public void setup() {
-        FormattingConversionService converter = new FormattingConversionService();
-        converter.addConverter(new DataPointTypeConverter());
-        converter.addConverter(new IATASpringConverter());
+        airportIndex.reload(airportRepository.findAll());
+        highWaterMarks.clear();
+
         mockMvc = MockMvcBuilders
                 .standaloneSetup(endpoint)
-                .setConversionService(converter)
+                .setConversionService(converter())
                 .build();
     }
 
+    private static FormattingConversionService converter() {
+        FormattingConversionService converter = new FormattingConversionService();
+        converter.addConverter(new DataPointTypeConverter());
+        converter.addConverter(new IATASpringConverter());
+        return converter;
+    }
+
     @Test
     public void testPing() throws Exception {
         mockMvc.perform(get("/collect/ping"))
@@ -113,6 +133,279 @@ public class RestWeatherCollectorEndpointTest {
         remove(measurement);
     }
 
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testUpdateWeatherSequence() throws Exception {
+        for (int sequence : new int[] {5, 5, 3})
+            mockMvc.perform(post("/collect/weather/bos/cloud_cover")
+                    .contentType(MediaType.APPLICATION_JSON_UTF8)
+                    .content("{ " +
+                        "\"mean\": " + sequence + "," +
+                        "\"first\": 10," +
+                        "\"second\": 20," +
+                        "\"third\": 30," +
+                        "\"count\": 40," +
+                        "\"sequence\": " + sequence +
+                    "}"))
+                    .andExpect(status().isOk());
+
+        mockMvc.perform(post("/collect/weather/batch")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[" +
+                    "{\"iata\": \"bos\", \"pointType\": \"cloud_cover\", \"sequence\": 4, " +
+                        "\"mean\": 0.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}," +
+                    "{\"iata\": \"bos\", \"pointType\": \"cloud_cover\", \"sequence\": -1, " +
+                        "\"mean\": 0.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}" +
+                "]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" +
+                    "{\"iata\":\"bos\",\"accepted\":true,\"duplicate\":true}," +
+                    "{\"iata\":\"bos\",\"accepted\":false,\"error\":\"sequence must not be negative\"}" +
+                "]", false));
+
+        // A claim that is not stored yet may still roll back, so its retries have to come back
+        highWaterMarks.claim(valueOf("BOS"), DataPointType.CLOUD_COVER, 9);
+        mockMvc.perform(post("/collect/weather/bos/cloud_cover")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"mean\": 9.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40, " +
+                    "\"sequence\": 9}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+
+        mockMvc.perform(post("/collect/weather/batch")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[" +
+                    "{\"iata\": \"bos\", \"pointType\": \"cloud_cover\", \"sequence\": 9, " +
+                        "\"mean\": 0.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}" +
+                "]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" +
+                    "{\"iata\":\"bos\",\"accepted\":false,\"error\":\"sequence in flight\"}" +
+                "]", false));
+
+        Measurement measurement = manager
+                .createQuery("select m from Measurement m", Measurement.class)
+                .getSingleResult();
+
+        assertThat(measurement.getPoint().getMean(), equalTo(5D));
+
+        remove(measurement);
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testUpdateWeatherAsync() throws Exception {
+        mockMvc.perform(post("/collect/weather/bos/cloud_cover?async=true")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{ " +
+                    "\"mean\": 0.0," +
+                    "\"first\": 10," +
+                    "\"second\": 20," +
+                    "\"third\": 30," +
+                    "\"count\": 40" +
+                "}"))
+                .andExpect(status().isAccepted());
+
+        mockMvc.perform(post("/collect/weather/bos/cloud_cover?async=true")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{ " +
+                    "\"mean\": -1000.0," +
+                    "\"first\": 10," +
+                    "\"second\": 20," +
+                    "\"third\": 30," +
+                    "\"count\": 40" +
+                "}"))
+                .andExpect(status().isBadRequest());
+
+        List<Measurement> measurements = Collections.emptyList();
+        for (int attempt = 0; attempt < 100 && measurements.isEmpty(); attempt++) {
+            Thread.sleep(50);
+            measurements = manager.createQuery("select m from Measurement m", Measurement.class)
+                    .getResultList();
+        }
+
+        assertThat(measurements.size(), equalTo(1));
+        assertThat(measurements.get(0).getAirport().getIata(), equalTo(valueOf("BOS")));
+
+        remove(measurements.get(0));
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testUpdateWeatherCoalesced() throws Exception {
+        for (int mean = 1; mean <= 3; mean++)
+            mockMvc.perform(post("/collect/weather/bos/wind?coalesce=true")
+                    .contentType(MediaType.APPLICATION_JSON_UTF8)
+                    .content("{ " +
+                        "\"mean\": " + mean + "," +
+                        "\"first\": 10," +
+                        "\"second\": 20," +
+                        "\"third\": 30," +
+                        "\"count\": 40" +
+                    "}"))
+                    .andExpect(status().isAccepted());
+
+        List<Measurement> measurements = Collections.emptyList();
+        for (int attempt = 0; attempt < 100 && measurements.isEmpty(); attempt++) {
+            Thread.sleep(50);
+            measurements = manager.createQuery("select m from Measurement m", Measurement.class)
+                    .getResultList();
+        }
+
+        assertThat(measurements.size(), equalTo(1));
+        assertThat(measurements.get(0).getPoint().getMean(), equalTo(3D));
+
+        remove(measurements.get(0));
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testUpdateWeatherOverBudget() throws Exception {
+        AdmissionInterceptor interceptor = new AdmissionInterceptor();
+        interceptor.admissionControl = new AdmissionControl() {
+            @Override
+            public boolean tryAcquire(IATA iata) {
+                return !valueOf("BOS").equals(iata);
+            }
+        };
+        MockMvc limitedMockMvc = MockMvcBuilders
+                .standaloneSetup(endpoint)
+                .setConversionService(converter())
+                .addMappedInterceptors(new String[] { "/collect/weather/**" }, interceptor)
+                .build();
+
+        // Shed before the body is even read
+        limitedMockMvc.perform(post("/collect/weather/bos/cloud_cover")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("not json"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"));
+
+        limitedMockMvc.perform(post("/collect/weather/jfk/cloud_cover")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{ " +
+                    "\"mean\": 0.0," +
+                    "\"first\": 10," +
+                    "\"second\": 20," +
+                    "\"third\": 30," +
+                    "\"count\": 40" +
+                "}"))
+                .andExpect(status().isOk());
+
+        remove(manager.createQuery("select m from Measurement m", Measurement.class)
+                .getSingleResult());
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testUpdateWeatherBatch() throws Exception {
+        mockMvc.perform(post("/collect/weather/batch")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[" +
+                    "{\"iata\": \"bos\", \"pointType\": \"cloud_cover\", " +
+                        "\"mean\": 0.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}," +
+                    "{\"iata\": \"abc\", \"pointType\": \"wind\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}," +
+                    "{\"iata\": \"jfk\", \"pointType\": \"snow\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}," +
+                    "{\"iata\": \"jfk\", \"pointType\": \"pressure\", " +
+                        "\"mean\": 10.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}," +
+                    "{\"iata\": \"jfk\", \"pointType\": \"wind\", \"mean\": 5.0}" +
+                "]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" +
+                    "{\"iata\":\"bos\",\"accepted\":true}," +
+                    "{\"iata\":\"abc\",\"accepted\":false,\"error\":\"unknown airport\"}," +
+                    "{\"iata\":\"jfk\",\"accepted\":false,\"error\":\"unknown point type\"}," +
+                    "{\"iata\":\"jfk\",\"accepted\":false,\"error\":\"mean is out of range\"}," +
+                    "{\"iata\":\"jfk\",\"accepted\":false,\"error\":\"invalid data point\"}" +
+                "]", false));
+
+        Measurement measurement = manager
+                .createQuery("select m from Measurement m", Measurement.class)
+                .getSingleResult();
+
+        assertThat(measurement.getAirport().getIata(), equalTo(valueOf("BOS")));
+
+        remove(measurement);
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testUpdateWeatherStream() throws Exception {
+        mockMvc.perform(post("/collect/weather/stream")
+                .contentType("application/x-ndjson")
+                .content(
+                    "{\"iata\": \"bos\", \"pointType\": \"cloud_cover\", " +
+                        "\"mean\": 0.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n" +
+                    "{\"iata\": \"abc\", \"pointType\": \"wind\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n" +
+                    "{\"iata\": \"jfk\", \"pointType\": \"wind\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{" +
+                    "\"accepted\":2,\"rejected\":1,\"batches\":1," +
+                    "\"rejections\":[{\"line\":2,\"iata\":\"abc\",\"error\":\"unknown airport\"}]" +
+                "}", false));
+
+        mockMvc.perform(post("/collect/weather/stream")
+                .contentType("application/x-ndjson")
+                .content(
+                    "{\"iata\": \"lga\", \"pointType\": \"wind\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n" +
+                    "{\"iata\": \"lga\", \"pointType\": \n" +
+                    "{\"iata\": \"lga\", \"pointType\": \"wind\", " +
+                        "\"mean\": \"x\", \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n" +
+                    "\n" +
+                    "{\"iata\": \"mmu\", \"pointType\": \"wind\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{" +
+                    "\"accepted\":2,\"rejected\":2," +
+                    "\"rejections\":[" +
+                        "{\"line\":2,\"error\":\"malformed reading\"}," +
+                        "{\"line\":3,\"error\":\"malformed reading\"}]" +
+                "}", false));
+
+        List<Measurement> measurements = manager
+                .createQuery("select m from Measurement m", Measurement.class)
+                .getResultList();
+
+        assertThat(measurements.size(), equalTo(4));
+
+        measurements.forEach(this::remove);
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testUpdateWeatherStreamOverLongLine() throws Exception {
+        // No newline for far longer than a record may be, the line is skipped instead of buffered
+        String padding = String.join("", Collections.nCopies(64 * 1024, " "));
+
+        mockMvc.perform(post("/collect/weather/stream")
+                .contentType("application/x-ndjson")
+                .content(
+                    "{\"iata\": \"bos\", \"pointType\": \"wind\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n" +
+                    "{\"iata\": \"lga\", \"pointType\": \"wind\"," + padding +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n" +
+                    "{\"iata\": \"jfk\", \"pointType\": \"wind\", " +
+                        "\"mean\": 5.0, \"first\": 10, \"second\": 20, \"third\": 30, \"count\": 40}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{" +
+                    "\"accepted\":2,\"rejected\":1," +
+                    "\"rejections\":[{\"line\":2,\"error\":\"reading is too long\"}]" +
+                "}", false));
+
+        List<Measurement> measurements = manager
+                .createQuery("select m from Measurement m", Measurement.class)
+                .getResultList();
+
+        assertThat(measurements.size(), equalTo(2));
+
+        measurements.forEach(this::remove);
+    }
+
     @Transactional
     protected void remove(Measurement measurement) {
         measurement = manager.find(Measurement.class, DomainRepositoryTest.getId(measurement));
@@ -22,7 +22,12 @@
  */
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.cache.WeatherResponseCache;
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.DataPointRepository;
+import com.crossover.trial.weather.latest.LatestMeasurementStore;
 import com.crossover.trial.weather.metrics.MetricsService;
+import com.crossover.trial.weather.spatial.AirportIndex;
 import com.crossover.trial.weather.util.DataPointTypeConverter;
 import com.crossover.trial.weather.util.iata.IATASpringConverter;
 import com.github.springtestdbunit.DbUnitTestExecutionListener;
@@ -64,8 +69,20 @@ public class RestWeatherQueryEndpointTest {
     @Autowired MetricsService<?, ?> metricsService;
     @Autowired EntityManager manager;
 
+    @Autowired AirportRepository airportRepository;
+    @Autowired AirportIndex airportIndex;
+
+    @Autowired DataPointRepository dataPointRepository;
+    @Autowired LatestMeasurementStore latestMeasurements;
+    @Autowired WeatherResponseCache responseCache;
+
     @Before
     public void setup() {
+        airportIndex.reload(airportRepository.findAll());
+        latestMeasurements.reload(dataPointRepository.findLatestMeasurementsByType());
+        responseCache.invalidateAll();
+        metricsService.clear();
+
         FormattingConversionService converter = new FormattingConversionService();
         converter.addConverter(new DataPointTypeConverter());
         converter.addConverter(new IATASpringConverter());
@@ -92,6 +109,131 @@ public class RestWeatherQueryEndpointTest {
         metricsService.clear();
     }
 
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testFindInRangeCached() throws Exception {
+
+        populateData();
+
+        mockMvc.perform(get("/query/weather/jfk/50"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{" +
+                    "\"airport\":{\"iata\":\"EWR\"}," +
+                    "\"data\":{\"mean\":20.0}" +
+                    "}]", false));
+
+        mockMvc.perform(post("/collect/weather/ewr/cloud_cover")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{ " +
+                        "\"mean\": 30.0," +
+                        "\"first\": 10," +
+                        "\"second\": 20," +
+                        "\"third\": 30," +
+                        "\"count\": 40" +
+                        "}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/query/weather/jfk/50"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{" +
+                    "\"airport\":{\"iata\":\"EWR\"}," +
+                    "\"data\":{\"mean\":30.0}" +
+                    "}]", false));
+
+        mockMvc.perform(post("/collect/airport/xxx/40.7/-73.9"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/collect/weather/xxx/wind")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{ " +
+                        "\"mean\": 5.0," +
+                        "\"first\": 1," +
+                        "\"second\": 2," +
+                        "\"third\": 3," +
+                        "\"count\": 4" +
+                        "}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/query/weather/jfk/50"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{" +
+                    "\"airport\":{\"iata\":\"EWR\"}" +
+                    "},{" +
+                    "\"airport\":{\"iata\":\"XXX\"}," +
+                    "\"data\":{\"mean\":5.0,\"type\":\"WIND\"}" +
+                    "}]", false));
+
+        removeAllData();
+        metricsService.clear();
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testFindInRanges() throws Exception {
+
+        populateData();
+
+        mockMvc.perform(post("/query/weather")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[" +
+                        "{\"iata\": \"jfk\", \"radius\": 50}," +
+                        "{\"iata\": \"ewr\", \"radius\": 50}," +
+                        "{\"iata\": \"lga\", \"radius\": 50}" +
+                        "]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{" +
+                    "\"iata\":\"JFK\",\"radius\":50.0,\"weather\":[{" +
+                        "\"airport\":{\"iata\":\"EWR\"}," +
+                        "\"data\":{\"mean\":20.0,\"type\":\"CLOUD_COVER\"}}]" +
+                    "},{" +
+                    "\"iata\":\"EWR\",\"radius\":50.0,\"weather\":[]" +
+                    "},{" +
+                    "\"iata\":\"LGA\",\"radius\":50.0,\"weather\":[{" +
+                        "\"airport\":{\"iata\":\"EWR\"}," +
+                        "\"data\":{\"mean\":20.0,\"type\":\"CLOUD_COVER\"}}]" +
+                    "}]", false));
+
+        mockMvc.perform(post("/query/weather")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[{\"iata\": \"jfk\", \"radius\": -1}]"))
+                .andExpect(status().isBadRequest());
+
+        removeAllData();
+        metricsService.clear();
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testFindNearest() throws Exception {
+
+        populateData();
+        mockMvc.perform(post("/collect/weather/lga/wind")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{ " +
+                        "\"mean\": 5.0," +
+                        "\"first\": 1," +
+                        "\"second\": 2," +
+                        "\"third\": 3," +
+                        "\"count\": 4" +
+                        "}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/query/weather/jfk/nearest/3"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{" +
+                    "\"airport\":{\"iata\":\"LGA\"}," +
+                    "\"data\":{\"mean\":5.0,\"type\":\"WIND\"}" +
+                    "},{" +
+                    "\"airport\":{\"iata\":\"EWR\"}," +
+                    "\"data\":{\"mean\":20.0,\"type\":\"CLOUD_COVER\"}" +
+                    "}]", false));
+
+        mockMvc.perform(get("/query/weather/jfk/nearest/0"))
+                .andExpect(status().isBadRequest());
+
+        removeAllData();
+        metricsService.clear();
+    }
+
     @Test
     @DatabaseSetup("classpath:dbtest/airport_small.xml")
     public void testPing() throws Exception {
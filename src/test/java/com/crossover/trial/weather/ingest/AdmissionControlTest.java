@@ -0,0 +1,91 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.IATA;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class AdmissionControlTest {
+
+    private static final IATA BOS = IATA.valueOf("BOS");
+    private static final IATA JFK = IATA.valueOf("JFK");
+
+    private long now;
+    private AdmissionControl admissionControl;
+
+    @Before
+    public void setup() {
+        now = -TimeUnit.DAYS.toNanos(1);
+
+        admissionControl = new AdmissionControl();
+        admissionControl.clock = () -> now;
+        admissionControl.airportRate = 10;
+        admissionControl.airportBurst = 3;
+        admissionControl.globalRate = 100;
+        admissionControl.globalBurst = 5;
+        admissionControl.init();
+    }
+
+    @Test
+    public void testAirportBudget() {
+        for (int i = 0; i < 3; i++)
+            assertThat(admissionControl.tryAcquire(BOS), equalTo(true));
+        assertThat(admissionControl.tryAcquire(BOS), equalTo(false));
+
+        // Other airports keep their own budget
+        assertThat(admissionControl.tryAcquire(JFK), equalTo(true));
+
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertThat(admissionControl.tryAcquire(BOS), equalTo(true));
+        assertThat(admissionControl.tryAcquire(BOS), equalTo(false));
+    }
+
+    @Test
+    public void testGlobalBudget() {
+        for (int i = 0; i < 5; i++)
+            assertThat(admissionControl.tryAcquire(null), equalTo(true));
+        assertThat(admissionControl.tryAcquire(null), equalTo(false));
+
+        // A request shed globally gives its airport token back
+        assertThat(admissionControl.tryAcquire(BOS), equalTo(false));
+        now += TimeUnit.MILLISECONDS.toNanos(30);
+        for (int i = 0; i < 3; i++)
+            assertThat(admissionControl.tryAcquire(BOS), equalTo(true));
+    }
+
+    @Test
+    public void testUnlimited() {
+        admissionControl.airportRate = 0;
+        admissionControl.globalRate = 0;
+        admissionControl.init();
+
+        for (int i = 0; i < 1000; i++)
+            assertThat(admissionControl.tryAcquire(BOS), equalTo(true));
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.DomainRepositoryTest;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.domain.Measurement;
+import com.crossover.trial.weather.spatial.AirportIndex;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
+
+import static com.crossover.trial.weather.domain.IATA.valueOf;
+import static com.crossover.trial.weather.ingest.BinaryIngestionServer.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:context-test.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+public class BinaryIngestionServerTest {
+
+    @Autowired AutowireCapableBeanFactory beanFactory;
+    @Autowired EntityManager manager;
+
+    @Autowired AirportRepository airportRepository;
+    @Autowired AirportIndex airportIndex;
+
+    private BinaryIngestionServer server;
+
+    @Before
+    public void setup() throws Exception {
+        airportIndex.reload(airportRepository.findAll());
+
+        server = new BinaryIngestionServer();
+        beanFactory.autowireBean(server);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testIngest() throws Exception {
+        ByteBuffer records = ByteBuffer.allocate(3 * RECORD_SIZE);
+        record(records, valueOf("BOS"), DataPointType.WIND, 5);
+        record(records, valueOf("ABC"), DataPointType.WIND, 5);
+        record(records, valueOf("JFK"), DataPointType.PRESSURE, 10);
+        records.flip();
+
+        ByteBuffer statuses = ByteBuffer.allocate(3);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()))) {
+            // Split mid-record to check it is reassembled
+            records.limit(RECORD_SIZE + 5);
+            channel.write(records);
+            records.limit(records.capacity());
+            channel.write(records);
+
+            while (statuses.hasRemaining())
+                channel.read(statuses);
+        }
+
+        assertThat(statuses.array(), equalTo(new byte[] { ACCEPTED, REJECTED, REJECTED }));
+
+        List<Measurement> measurements = Collections.emptyList();
+        for (int attempt = 0; attempt < 100 && measurements.isEmpty(); attempt++) {
+            Thread.sleep(50);
+            measurements = manager.createQuery("select m from Measurement m", Measurement.class)
+                    .getResultList();
+        }
+
+        assertThat(measurements.size(), equalTo(1));
+        assertThat(measurements.get(0).getAirport().getIata(), equalTo(valueOf("BOS")));
+        assertThat(measurements.get(0).getPoint().getMean(), equalTo(5D));
+
+        remove(measurements.get(0));
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testFailedRecordClosesOnlyItsConnection() throws Exception {
+        AirportIndex index = server.airportIndex;
+        server.airportIndex = (AirportIndex) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { AirportIndex.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("find") && valueOf("EWR").equals(args[0]))
+                        throw new DataRetrievalFailureException("index is down");
+                    return method.invoke(index, args);
+                });
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record(record, valueOf("EWR"), DataPointType.WIND, 5);
+        record.flip();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()))) {
+            channel.write(record);
+
+            assertThat(channel.read(ByteBuffer.allocate(1)), equalTo(-1));
+        }
+
+        record.clear();
+        record(record, valueOf("BOS"), DataPointType.WIND, 5);
+        record.flip();
+        ByteBuffer status = ByteBuffer.allocate(1);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()))) {
+            channel.write(record);
+
+            while (status.hasRemaining())
+                channel.read(status);
+        }
+
+        assertThat(status.get(0), equalTo(ACCEPTED));
+
+        List<Measurement> measurements = Collections.emptyList();
+        for (int attempt = 0; attempt < 100 && measurements.isEmpty(); attempt++) {
+            Thread.sleep(50);
+            measurements = manager.createQuery("select m from Measurement m", Measurement.class)
+                    .getResultList();
+        }
+
+        assertThat(measurements.size(), equalTo(1));
+        assertThat(measurements.get(0).getAirport().getIata(), equalTo(valueOf("BOS")));
+
+        remove(measurements.get(0));
+    }
+
+    @Transactional
+    protected void remove(Measurement measurement) {
+        manager.remove(manager.find(Measurement.class, DomainRepositoryTest.getId(measurement)));
+    }
+
+    private static void record(ByteBuffer buffer, IATA iata, DataPointType type, double mean) {
+        buffer.putShort((short) iata.toIndex())
+                .put((byte) type.ordinal())
+                .putDouble(mean)
+                .putInt(10)
+                .putInt(20)
+                .putInt(30)
+                .putInt(40);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.ingest.CoalescingIngestion.Pending;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.crossover.trial.weather.domain.DataPointType.WIND;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class CoalescingIngestionTest {
+
+    private static final Airport BOS = new Airport.Builder()
+            .withIata(IATA.valueOf("BOS"))
+            .withLatitude(42.364347)
+            .withLongitude(-71.005181)
+            .build();
+
+    @Test
+    public void testLatest() {
+        Pending older = pending(10, 1, 2, 3, 4);
+        Pending newer = pending(20, 5, 6, 7, 8);
+
+        assertThat(CoalescingIngestion.latest(older, newer), equalTo(newer));
+    }
+
+    @Test
+    public void testWeighted() {
+        DataPoint merged = CoalescingIngestion.weighted(pending(10, 1, 2, 3, 1), pending(20, 5, 6, 7, 3)).dataPoint;
+
+        assertThat(merged.getType(),   equalTo(WIND));
+        assertThat(merged.getMean(),   equalTo(17.5));
+        assertThat(merged.getFirst(),  equalTo(4));
+        assertThat(merged.getSecond(), equalTo(5));
+        assertThat(merged.getThird(),  equalTo(6));
+        assertThat(merged.getCount(),  equalTo(4));
+    }
+
+    @Test
+    public void testWeightedWithoutCount() {
+        Pending newer = pending(20, 5, 6, 7, 0);
+
+        assertThat(CoalescingIngestion.weighted(pending(10, 1, 2, 3, 0), newer), equalTo(newer));
+    }
+
+    @Test
+    public void testStopFlushesEveryAcceptedOffer() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            AtomicLong flushed = new AtomicLong();
+
+            CoalescingIngestion coalescer = new CoalescingIngestion();
+            coalescer.windowInMillis = 1;
+            coalescer.merge = "weighted";
+            coalescer.ingestion = new WriteBehindIngestion() {
+                @Override
+                public boolean offer(Airport airport, DataPoint dataPoint) {
+                    flushed.addAndGet(dataPoint.getCount());
+                    return true;
+                }
+            };
+            coalescer.start();
+
+            // Every accepted reading weighs one, so the flushed counts add up to the accepted ones
+            long accepted = WriteBehindIngestionTest.offerUntilStopped(coalescer::offer, coalescer::stop);
+
+            assertThat(flushed.get(), equalTo(accepted));
+        }
+    }
+
+    @Test
+    public void testIdleFlusherWaitsForWindows() throws Exception {
+        AtomicLong flushed = new AtomicLong();
+
+        CoalescingIngestion coalescer = new CoalescingIngestion();
+        coalescer.windowInMillis = 20;
+        coalescer.merge = "latest";
+        coalescer.ingestion = new WriteBehindIngestion() {
+            @Override
+            public boolean offer(Airport airport, DataPoint dataPoint) {
+                flushed.incrementAndGet();
+                return true;
+            }
+        };
+        coalescer.start();
+
+        for (int round = 1; round <= 3; round++) {
+            assertThat(coalescer.offer(BOS, WriteBehindIngestionTest.dataPoint()), equalTo(true));
+            for (int attempt = 0; attempt < 500 && flushed.get() < round; attempt++)
+                Thread.sleep(10);
+
+            assertThat(flushed.get(), equalTo((long) round));
+            WriteBehindIngestionTest.awaitState(coalescer.flusher, Thread.State.WAITING);
+        }
+
+        coalescer.stop();
+    }
+
+    private static Pending pending(double mean, int first, int second, int third, int count) {
+        return new Pending(BOS, new DataPoint.Builder()
+                .withType(WIND)
+                .withMean(mean)
+                .withFirst(first)
+                .withSecond(second)
+                .withThird(third)
+                .withCount(count)
+                .build());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class RingBufferTest {
+
+    @Test
+    public void testOfferAndPoll() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++)
+            assertThat(buffer.offer(i), equalTo(true));
+
+        assertThat(buffer.offer(4), equalTo(false));
+        assertThat(buffer.size(), equalTo(4));
+
+        for (int i = 0; i < 4; i++)
+            assertThat(buffer.poll(), equalTo(i));
+        assertThat(buffer.poll(), nullValue());
+
+        assertThat(buffer.offer(5), equalTo(true));
+        assertThat(buffer.poll(), equalTo(5));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCapacityPowerOfTwo() {
+        new RingBuffer<Integer>(3);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        int producers = 4, perProducer = 20000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++)
+                    while (!buffer.offer(offset + i))
+                        Thread.yield();
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        BitSet seen = new BitSet();
+        int received = 0;
+        while (received < producers * perProducer) {
+            Integer item = buffer.poll();
+            if (item == null)
+                continue;
+            assertThat(seen.get(item), equalTo(false));
+            seen.set(item);
+            received++;
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(seen.cardinality(), equalTo(producers * perProducer));
+        assertThat(buffer.poll(), nullValue());
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.IATA;
+import org.junit.Test;
+
+import static com.crossover.trial.weather.domain.DataPointType.TEMPERATURE;
+import static com.crossover.trial.weather.domain.DataPointType.WIND;
+import static com.crossover.trial.weather.ingest.SequenceHighWaterMarks.DUPLICATE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class SequenceHighWaterMarksTest {
+
+    private static final IATA BOS = IATA.valueOf("BOS");
+    private static final IATA JFK = IATA.valueOf("JFK");
+
+    @Test
+    public void testClaim() {
+        SequenceHighWaterMarks marks = new SequenceHighWaterMarks();
+
+        assertThat(marks.claim(BOS, WIND, 0), equalTo(-1L));
+        assertThat(marks.claim(BOS, WIND, 0), equalTo(DUPLICATE));
+        assertThat(marks.claim(BOS, WIND, 5), equalTo(0L));
+        assertThat(marks.claim(BOS, WIND, 3), equalTo(DUPLICATE));
+
+        // Marks are kept apart per airport and type
+        assertThat(marks.claim(BOS, TEMPERATURE, 3), equalTo(-1L));
+        assertThat(marks.claim(JFK, WIND, 3), equalTo(-1L));
+    }
+
+    @Test
+    public void testRelease() {
+        SequenceHighWaterMarks marks = new SequenceHighWaterMarks();
+
+        long previous = marks.claim(BOS, WIND, 7);
+        marks.release(BOS, WIND, 7, previous);
+        assertThat(marks.claim(BOS, WIND, 7), equalTo(-1L));
+
+        // A newer claim is kept when an older one is given back
+        marks.claim(BOS, WIND, 8);
+        marks.release(BOS, WIND, 7, previous);
+        assertThat(marks.claim(BOS, WIND, 8), equalTo(DUPLICATE));
+    }
+
+    @Test
+    public void testCommit() {
+        SequenceHighWaterMarks marks = new SequenceHighWaterMarks();
+
+        marks.claim(BOS, WIND, 5);
+        assertThat(marks.isCommitted(BOS, WIND, 5), equalTo(false));
+
+        marks.commit(BOS, WIND, 5);
+        assertThat(marks.isCommitted(BOS, WIND, 5), equalTo(true));
+        assertThat(marks.isCommitted(BOS, WIND, 3), equalTo(true));
+
+        // Only settled up to the last stored reading, an older commit never moves it back
+        marks.claim(BOS, WIND, 9);
+        marks.commit(BOS, WIND, 4);
+        assertThat(marks.isCommitted(BOS, WIND, 7), equalTo(false));
+        assertThat(marks.isCommitted(BOS, WIND, 5), equalTo(true));
+    }
+}
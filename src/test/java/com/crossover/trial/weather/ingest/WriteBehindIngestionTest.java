@@ -0,0 +1,167 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointRepository;
+import com.crossover.trial.weather.domain.IATA;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.crossover.trial.weather.domain.DataPointType.WIND;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class WriteBehindIngestionTest {
+
+    private static final Airport BOS = new Airport.Builder()
+            .withIata(IATA.valueOf("BOS"))
+            .withLatitude(42.364347)
+            .withLongitude(-71.005181)
+            .build();
+
+    @Test
+    public void testStopDrainsEveryAcceptedOffer() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            AtomicLong persisted = new AtomicLong();
+
+            WriteBehindIngestion ingestion = new WriteBehindIngestion();
+            ingestion.bufferSize = 1 << 16;
+            ingestion.batchSize = 100;
+            ingestion.lingerInMillis = 1;
+            ingestion.dataPointRepository = repository(persisted);
+            ingestion.transactionManager = new StubTransactionManager();
+            ingestion.start();
+
+            long accepted = offerUntilStopped(ingestion::offer, ingestion::stop);
+
+            assertThat(persisted.get(), equalTo(accepted));
+        }
+    }
+
+    @Test
+    public void testIdleDrainerWaitsForOffers() throws Exception {
+        AtomicLong persisted = new AtomicLong();
+
+        WriteBehindIngestion ingestion = new WriteBehindIngestion();
+        ingestion.bufferSize = 1024;
+        ingestion.batchSize = 100;
+        ingestion.lingerInMillis = 1;
+        ingestion.dataPointRepository = repository(persisted);
+        ingestion.transactionManager = new StubTransactionManager();
+        ingestion.start();
+
+        for (int round = 1; round <= 3; round++) {
+            assertThat(ingestion.offer(BOS, dataPoint()), equalTo(true));
+            for (int attempt = 0; attempt < 500 && persisted.get() < round; attempt++)
+                Thread.sleep(10);
+
+            assertThat(persisted.get(), equalTo((long) round));
+            awaitState(ingestion.drainer, Thread.State.WAITING);
+        }
+
+        ingestion.stop();
+    }
+
+    // Parked without a timeout is the only way a thread reaches WAITING here
+    static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        for (int attempt = 0; attempt < 500 && thread.getState() != state; attempt++)
+            Thread.sleep(10);
+
+        assertThat(thread.getState(), equalTo(state));
+    }
+
+    // Offers from several threads until the pipeline turns them away, stopping it midway
+    static long offerUntilStopped(Offer offer, Stop stop) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Long>> offerers = new ArrayList<>();
+        for (int offerer = 0; offerer < 4; offerer++)
+            offerers.add(executor.submit(() -> {
+                long accepted = 0;
+                while (offer.offer(BOS, dataPoint()))
+                    accepted++;
+                return accepted;
+            }));
+        executor.shutdown();
+
+        Thread.sleep(2);
+        stop.stop();
+
+        long accepted = 0;
+        for (Future<Long> offerer : offerers)
+            accepted += offerer.get();
+        return accepted;
+    }
+
+    static DataPoint dataPoint() {
+        return new DataPoint.Builder()
+                .withType(WIND)
+                .withMean(5)
+                .withFirst(1).withSecond(2).withThird(3)
+                .withCount(1)
+                .build();
+    }
+
+    private static DataPointRepository repository(AtomicLong persisted) {
+        return (DataPointRepository) Proxy.newProxyInstance(DataPointRepository.class.getClassLoader(),
+                new Class<?>[] { DataPointRepository.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("createMeasurement"))
+                        persisted.incrementAndGet();
+                    return null;
+                });
+    }
+
+    interface Offer {
+        boolean offer(Airport airport, DataPoint dataPoint);
+    }
+
+    interface Stop {
+        void stop() throws InterruptedException;
+    }
+
+    private static class StubTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {}
+
+        @Override
+        public void rollback(TransactionStatus status) {}
+    }
+}
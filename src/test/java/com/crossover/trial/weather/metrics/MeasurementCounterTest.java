@@ -0,0 +1,78 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class MeasurementCounterTest {
+
+    private long now;
+    private MeasurementCounter counter;
+
+    @Before
+    public void setup() {
+        now = TimeUnit.DAYS.toMillis(10);
+
+        counter = new MeasurementCounter();
+        counter.clock = () -> now;
+    }
+
+    @Test
+    public void testCount() {
+        counter.increment();
+        counter.add(2);
+        assertThat(counter.count(), equalTo(3L));
+
+        now += TimeUnit.MINUTES.toMillis(30);
+        counter.increment();
+        assertThat(counter.count(), equalTo(4L));
+
+        counter.clear();
+        assertThat(counter.count(), equalTo(0L));
+    }
+
+    @Test
+    public void testExpiry() {
+        counter.add(5);
+
+        now += TimeUnit.MINUTES.toMillis(MeasurementCounter.MINUTES - 1);
+        counter.increment();
+        assertThat(counter.count(), equalTo(6L));
+
+        now += TimeUnit.MINUTES.toMillis(1);
+        assertThat(counter.count(), equalTo(1L));
+
+        // Lands on the slot of the first minute and replaces its stale count
+        counter.add(2);
+        assertThat(counter.count(), equalTo(3L));
+
+        now += TimeUnit.DAYS.toMillis(1);
+        assertThat(counter.count(), equalTo(0L));
+    }
+}
@@ -41,6 +41,8 @@ import org.springframework.test.context.support.DependencyInjectionTestExecution
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 
@@ -53,18 +55,14 @@ public class MetricsServiceTest {
 
     @Autowired DataPointRepository dataPointRepository;
     @Autowired MetricsService<Meter, HistogramSnapshotDTO> metricsService;
+    @Autowired EntityManager manager;
 
-    @Test @Transactional
+    @Test
     @DatabaseSetup("classpath:dbtest/airport_small.xml")
     public void testSimple() {
-        DataPoint dataPoint = new DataPoint.Builder()
-                .withType(DataPointType.CLOUD_COVER)
-                .withCount(10).withFirst(1)
-                .withSecond(2).withThird(3)
-                .withMean(0)
-                .build();
+        metricsService.clear();
 
-        dataPointRepository.createMeasurement(IATA.valueOf("BOS"), dataPoint);
+        createMeasurement(IATA.valueOf("BOS"));
 
         MetricsReport<Meter, HistogramSnapshotDTO> report;
 
@@ -87,7 +85,27 @@ public class MetricsServiceTest {
         assertThat(report.getAirportMetrics().size(), equalTo(2));
         assertThat(report.getRadiusMetrics().getMax(), equalTo(20L));
 
+        removeAllData();
         metricsService.clear();
     }
 
+    // Commits, as the datasize only counts measurements once they are stored
+    @Transactional
+    protected void createMeasurement(IATA iata) {
+        DataPoint dataPoint = new DataPoint.Builder()
+                .withType(DataPointType.CLOUD_COVER)
+                .withCount(10).withFirst(1)
+                .withSecond(2).withThird(3)
+                .withMean(0)
+                .build();
+
+        dataPointRepository.createMeasurement(iata, dataPoint);
+    }
+
+    @Transactional
+    protected void removeAllData() {
+        manager.createQuery("delete from Measurement").executeUpdate();
+        manager.createQuery("delete from DataPoint").executeUpdate();
+    }
+
 }
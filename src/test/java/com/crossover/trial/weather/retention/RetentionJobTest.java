@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.retention;
+
+import com.crossover.trial.weather.domain.*;
+import com.crossover.trial.weather.domain.MeasurementRollup.Resolution;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static com.crossover.trial.weather.domain.IATA.valueOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:context-test.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+public class RetentionJobTest {
+
+    @Autowired RetentionJob retentionJob;
+    @Autowired DataPointRepository dataPointRepository;
+    @Autowired MeasurementRollupRepository rollupRepository;
+    @Autowired EntityManager manager;
+
+    @Before
+    @Transactional
+    public void setup() {
+        // Other tests leave measurements behind, all of them would be rolled up
+        manager.createQuery("delete from Measurement").executeUpdate();
+        manager.createQuery("delete from DataPoint").executeUpdate();
+        manager.createQuery("delete from MeasurementRollup").executeUpdate();
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_small.xml")
+    public void testRollUp() {
+        Measurement m1 = createMeasurement(DataPointType.CLOUD_COVER, 10, 1);
+        createMeasurement(DataPointType.CLOUD_COVER, 20, 3);
+        Measurement m3 = createMeasurement(DataPointType.CLOUD_COVER, 30, 1);
+        Measurement m4 = createMeasurement(DataPointType.HUMIDITY, 5, 1);
+        ZonedDateTime now = Measurement.timestamp();
+
+        assertThat(retentionJob.rollUp(now.plusDays(2)), equalTo(2L));
+
+        // The latest of each type stays raw
+        assertThat(dataPointRepository.findLatestMeasurementForIata(valueOf("BOS")), equalTo(m4));
+        assertThat(manager.createQuery("select count(p) from DataPoint p")
+                .getSingleResult(), equalTo(2L));
+
+        List<MeasurementRollup> rollups = findRollups("BOS");
+        assertThat(rollups.size(), equalTo(1));
+        assertRollup(rollups.get(0), Resolution.HOUR);
+
+        ZonedDateTime hour = m1.getTimestamp().withMinute(0).withSecond(0).withNano(0);
+        assertThat(dataPointRepository.countTotalMeasurementsInLastTimeWindow(hour), equalTo(4L));
+
+        assertThat(retentionJob.rollUp(now.plusDays(40)), equalTo(1L));
+
+        rollups = findRollups("BOS");
+        assertThat(rollups.size(), equalTo(1));
+        assertRollup(rollups.get(0), Resolution.DAY);
+
+        remove(m3);
+        remove(m4);
+        rollupRepository.deleteAll();
+    }
+
+    private List<MeasurementRollup> findRollups(String iata) {
+        return manager.createQuery("select r from MeasurementRollup r " +
+                "where r.iata = :iata order by r.periodStart", MeasurementRollup.class)
+                .setParameter("iata", iata)
+                .getResultList();
+    }
+
+    private static void assertRollup(MeasurementRollup rollup, Resolution resolution) {
+        assertThat(rollup.getResolution(), equalTo(resolution));
+        assertThat(rollup.getType(), equalTo(DataPointType.CLOUD_COVER));
+        assertThat(rollup.getSamples(), equalTo(2L));
+        assertThat(rollup.getCount(), equalTo(4L));
+        assertThat(rollup.getMean(), equalTo(17.5));
+        assertThat(rollup.getMin(), equalTo(10D));
+        assertThat(rollup.getMax(), equalTo(20D));
+    }
+
+    @Transactional
+    protected Measurement createMeasurement(DataPointType type, double mean, int count) {
+        return dataPointRepository.createMeasurement(valueOf("BOS"), new DataPoint.Builder()
+                .withType(type)
+                .withMean(mean)
+                .withFirst(1).withSecond(2).withThird(3)
+                .withCount(count)
+                .build());
+    }
+
+    @Transactional
+    protected void remove(Measurement measurement) {
+        manager.remove(manager.find(Measurement.class, DomainRepositoryTest.getId(measurement)));
+    }
+}
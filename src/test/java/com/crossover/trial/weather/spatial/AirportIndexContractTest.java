@@ -0,0 +1,171 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.IATA;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public abstract class AirportIndexContractTest {
+
+    protected abstract AirportIndex createIndex();
+
+    @Test
+    public void testAntimeridian() {
+        AirportIndex index = createIndex();
+        index.reload(asList(
+                airport("AAA", 0, 179.9),
+                airport("BBB", 0, -179.9),
+                airport("CCC", 0, 170)));
+
+        assertThat(index.findInRadius(IATA.valueOf("AAA"), 50),
+                equalTo(asList(airport("BBB", 0, -179.9))));
+    }
+
+    @Test
+    public void testPole() {
+        AirportIndex index = createIndex();
+        index.reload(asList(
+                airport("AAA", 89.9, 0),
+                airport("BBB", 89.9, 180 - 1e-6),
+                airport("CCC", 80, 0)));
+
+        assertThat(index.findInRadius(IATA.valueOf("AAA"), 50),
+                equalTo(asList(airport("BBB", 89.9, 180 - 1e-6))));
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        AirportIndex index = createIndex();
+        index.put(airport("AAA", 10, 10));
+        index.put(airport("BBB", 10.1, 10.1));
+
+        assertThat(index.findInRadius(IATA.valueOf("AAA"), 50).size(), equalTo(1));
+
+        index.put(airport("BBB", -10, -10));
+        assertThat(index.findInRadius(IATA.valueOf("AAA"), 50).size(), equalTo(0));
+
+        index.remove(IATA.valueOf("BBB"));
+        assertThat(index.find(IATA.valueOf("BBB")), nullValue());
+        assertThat(index.findInRadius(IATA.valueOf("BBB"), 50).size(), equalTo(0));
+    }
+
+    @Test
+    public void testAgainstFullScan() {
+        Random random = new Random(42);
+        List<Airport> airports = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            airports.add(airport(code(i),
+                    random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 360 - 180));
+
+        AirportIndex index = createIndex();
+        index.reload(airports);
+
+        for (Airport from : airports.subList(0, 50))
+            for (double radius : new double[] { 10, 500, 2500, 10000, 25000 }) {
+                List<Airport> expected = airports.stream()
+                        .filter(to -> !to.equals(from) && from.calculateDistance(to) <= radius)
+                        .sorted()
+                        .collect(Collectors.toList());
+
+                assertThat(index.findInRadius(from.getIata(), radius), equalTo(expected));
+            }
+    }
+
+    @Test
+    public void testNearestAgainstFullScan() {
+        Random random = new Random(7);
+        List<Airport> airports = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            airports.add(airport(code(i),
+                    random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 360 - 180));
+
+        AirportIndex index = createIndex();
+        index.reload(airports);
+
+        for (Airport from : airports.subList(0, 50))
+            for (int count : new int[] { 1, 5, 50, 5000 }) {
+                List<Double> expected = airports.stream()
+                        .filter(to -> !to.equals(from))
+                        .map(from::calculateDistance)
+                        .sorted()
+                        .limit(count)
+                        .collect(Collectors.toList());
+
+                assertThat(index.findNearest(from.getIata(), count).stream()
+                        .map(from::calculateDistance)
+                        .collect(Collectors.toList()), equalTo(expected));
+            }
+    }
+
+    @Test
+    public void testNearestAcrossAntimeridian() {
+        AirportIndex index = createIndex();
+        index.reload(asList(
+                airport("AAA", 0, 179.9),
+                airport("BBB", 0, -179.8),
+                airport("CCC", 0, 179),
+                airport("DDD", 10, 179.9)));
+
+        assertThat(index.findNearest(IATA.valueOf("AAA"), 2), equalTo(asList(
+                airport("BBB", 0, -179.8),
+                airport("CCC", 0, 179))));
+    }
+
+    @Test
+    public void testUnknownAirport() {
+        AirportIndex index = createIndex();
+        index.reload(Collections.emptyList());
+
+        assertThat(index.findInRadius(IATA.valueOf("AAA"), 50).size(), equalTo(0));
+        assertThat(index.findNearest(IATA.valueOf("AAA"), 5).size(), equalTo(0));
+    }
+
+    static Airport airport(String iata, double latitude, double longitude) {
+        return new Airport.Builder()
+                .withIata(iata)
+                .withLatitude(latitude)
+                .withLongitude(longitude)
+                .build();
+    }
+
+    static String code(int i) {
+        return new String(new char[] {
+                (char) ('A' + i / 676 % 26),
+                (char) ('A' + i / 26 % 26),
+                (char) ('A' + i % 26) });
+    }
+}
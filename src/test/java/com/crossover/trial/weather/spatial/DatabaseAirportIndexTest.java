@@ -0,0 +1,103 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.spatial.impl.DatabaseAirportIndex;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static com.crossover.trial.weather.domain.IATA.valueOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:context-test.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+public class DatabaseAirportIndexTest {
+
+    @Autowired AirportRepository airportRepository;
+    @Autowired AutowireCapableBeanFactory beanFactory;
+
+    private DatabaseAirportIndex index;
+
+    @Before
+    public void setup() {
+        index = new DatabaseAirportIndex();
+        beanFactory.autowireBean(index);
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_big.xml")
+    public void testFindInRadiusAgainstFullScan() {
+        List<Airport> airports = StreamSupport.stream(airportRepository.findAll().spliterator(), false)
+                .collect(Collectors.toList());
+
+        for (Airport from : airports.subList(0, 20))
+            for (double radius : new double[] { 50, 500, 2500, 25000 }) {
+                List<Airport> expected = airports.stream()
+                        .filter(to -> !to.equals(from) && from.calculateDistance(to) <= radius)
+                        .sorted()
+                        .collect(Collectors.toList());
+
+                assertThat(index.findInRadius(from.getIata(), radius), equalTo(expected));
+            }
+    }
+
+    @Test
+    @DatabaseSetup("classpath:dbtest/airport_big.xml")
+    public void testFindNearestAgainstFullScan() {
+        List<Airport> airports = StreamSupport.stream(airportRepository.findAll().spliterator(), false)
+                .collect(Collectors.toList());
+        Airport from = airportRepository.findOne(valueOf("BOS"));
+
+        for (int count : new int[] { 1, 10, 200 }) {
+            List<Airport> expected = airports.stream()
+                    .filter(to -> !to.equals(from))
+                    .sorted(Comparator.comparingDouble(from::calculateDistance)
+                            .thenComparing(Comparator.naturalOrder()))
+                    .limit(count)
+                    .collect(Collectors.toList());
+
+            assertThat(index.findNearest(from.getIata(), count), equalTo(expected));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.spatial.impl.DistanceKernel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.crossover.trial.weather.spatial.AirportIndexContractTest.airport;
+import static com.crossover.trial.weather.spatial.AirportIndexContractTest.code;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class DistanceKernelTest {
+
+    private static final double TOLERANCE = 1e-6;
+
+    @Test
+    public void testDistanceAgainstReference() {
+        List<Airport> airports = randomAirports(200, new Random(11));
+        DistanceKernel kernel = kernelOf(airports);
+
+        for (int from = 0; from < airports.size(); from++)
+            for (int to = 0; to < airports.size(); to++) {
+                double expected = airports.get(from).calculateDistance(airports.get(to));
+                assertThat(Math.abs(kernel.distance(from, to) - expected) <= TOLERANCE, equalTo(true));
+            }
+    }
+
+    @Test
+    public void testDistanceOfKnownAirportPairs() {
+        List<Airport> airports = new ArrayList<>();
+        airports.add(airport("BOS", 42.364347, -71.005181));
+        airports.add(airport("JFK", 40.639751, -73.778925));
+        airports.add(airport("LHR", 51.4775, -0.461389));
+        airports.add(airport("SYD", -33.946111, 151.177222));
+        airports.add(airport("AAA", 0, 179.9));
+        airports.add(airport("BBB", 0, -179.9));
+        airports.add(airport("NTH", 90, 0));
+        airports.add(airport("STH", -90, 0));
+        DistanceKernel kernel = kernelOf(airports);
+
+        // Great-circle distances on a sphere of 6372.8 km, worked out apart from the application
+        assertDistance(kernel, 0, 1, 300.273);
+        assertDistance(kernel, 1, 2, 5541.014);
+        assertDistance(kernel, 2, 3, 17025.065);
+        assertDistance(kernel, 4, 5, 22.245);
+        assertDistance(kernel, 6, 7, 20020.742);
+    }
+
+    @Test
+    public void testDistanceIsSymmetric() {
+        List<Airport> airports = randomAirports(400, new Random(17));
+        DistanceKernel kernel = kernelOf(airports);
+
+        int[] slots = new int[kernel.capacity()];
+        double[] distances = new double[kernel.capacity()];
+        for (int from = 0; from < airports.size(); from++) {
+            for (int to = 0; to < from; to++)
+                assertThat(Double.doubleToLongBits(kernel.distance(from, to)),
+                        equalTo(Double.doubleToLongBits(kernel.distance(to, from))));
+
+            int total = kernel.findInRadius(from, 2500, slots, distances);
+            for (int i = 0; i < total; i++)
+                assertThat(Double.doubleToLongBits(distances[i]),
+                        equalTo(Double.doubleToLongBits(kernel.distance(slots[i], from))));
+        }
+    }
+
+    @Test
+    public void testFindInRadiusAgainstReference() {
+        List<Airport> airports = randomAirports(1000, new Random(13));
+        airports.add(airport("AAA", 0, 179.9));
+        airports.add(airport("BBB", 0, -179.9));
+        airports.add(airport("CCC", 89.9, 0));
+        airports.add(airport("DDD", 89.9, 180 - 1e-6));
+        DistanceKernel kernel = kernelOf(airports);
+
+        // Empty slots must never show up
+        kernel.ensureCapacity(airports.size() + 10);
+        kernel.clear(7);
+
+        int[] slots = new int[kernel.capacity()];
+        double[] distances = new double[kernel.capacity()];
+        for (double radius : new double[] {10, 50, 500, 2500, 10000, 25000})
+            for (int from = 0; from < airports.size(); from++) {
+                // Samples the catalog, always including the antimeridian and pole airports
+                if (from == 7 || from % 17 != 0 && from < airports.size() - 4)
+                    continue;
+
+                int total = kernel.findInRadius(from, radius, slots, distances);
+
+                List<Integer> expected = new ArrayList<>();
+                for (int to = 0; to < airports.size(); to++)
+                    if (to != from && to != 7 && airports.get(from).calculateDistance(airports.get(to)) <= radius)
+                        expected.add(to);
+
+                List<Integer> actual = new ArrayList<>();
+                for (int i = 0; i < total; i++) {
+                    actual.add(slots[i]);
+                    assertThat(distances[i] <= radius, equalTo(true));
+                }
+                assertThat(actual, equalTo(expected));
+            }
+
+        int antimeridian = airports.size() - 4;
+        kernel.findInRadius(antimeridian, 50, slots, distances);
+        assertThat(slots[0], equalTo(antimeridian + 1));
+    }
+
+    private static void assertDistance(DistanceKernel kernel, int from, int to, double km) {
+        assertThat(kernel.distance(from, to) + " km", Math.abs(kernel.distance(from, to) - km) <= 0.01, equalTo(true));
+        assertThat(kernel.distance(to, from) + " km", Math.abs(kernel.distance(to, from) - km) <= 0.01, equalTo(true));
+    }
+
+    private static DistanceKernel kernelOf(List<Airport> airports) {
+        DistanceKernel kernel = new DistanceKernel();
+        kernel.ensureCapacity(airports.size());
+        for (int slot = 0; slot < airports.size(); slot++)
+            kernel.set(slot, airports.get(slot).getLatitude(), airports.get(slot).getLongitude());
+        return kernel;
+    }
+
+    private static List<Airport> randomAirports(int total, Random random) {
+        List<Airport> airports = new ArrayList<>();
+        for (int i = 0; i < total; i++)
+            airports.add(airport(code(i), random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+        return airports;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.spatial;
+
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.impl.NeighbourListAirportIndex;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class NeighbourListAirportIndexTest extends AirportIndexContractTest {
+
+    @Override
+    protected AirportIndex createIndex() {
+        return new NeighbourListAirportIndex(2500);
+    }
+
+    @Test
+    public void testIncrementalMaintenance() {
+        Random random = new Random(11);
+        Map<String, Airport> expected = new HashMap<>();
+
+        AirportIndex index = createIndex();
+        index.reload(Collections.emptyList());
+
+        for (int i = 0; i < 3000; i++) {
+            String code = code(random.nextInt(600));
+            if (random.nextInt(4) == 0) {
+                expected.remove(code);
+                index.remove(IATA.valueOf(code));
+            } else {
+                // Clustered so lists overlap and get patched from both sides
+                Airport airport = airport(code,
+                        random.nextDouble() * 30 + 30,
+                        random.nextDouble() * 30 - 10);
+                expected.put(code, airport);
+                index.put(airport);
+            }
+        }
+
+        AirportIndex rebuilt = createIndex();
+        rebuilt.reload(expected.values());
+
+        for (Airport from : expected.values())
+            for (double radius : new double[] { 100, 800, 2500 }) {
+                assertThat(index.findInRadius(from.getIata(), radius),
+                        equalTo(rebuilt.findInRadius(from.getIata(), radius)));
+                assertThat(index.findNearest(from.getIata(), 10),
+                        equalTo(rebuilt.findNearest(from.getIata(), 10)));
+            }
+    }
+
+    @Test
+    public void testRemoveAfterReload() {
+        Random random = new Random(17);
+        List<Airport> airports = new ArrayList<>();
+        for (int i = 0; i < 400; i++)
+            airports.add(airport(code(i),
+                    random.nextDouble() * 30 + 30,
+                    random.nextDouble() * 30 - 10));
+
+        AirportIndex index = createIndex();
+        index.reload(airports);
+
+        // Every pair was measured from both ends, removal must unlink either way
+        List<Airport> kept = new ArrayList<>();
+        for (Airport airport : airports)
+            if (kept.size() < 200)
+                kept.add(airport);
+            else
+                index.remove(airport.getIata());
+
+        AirportIndex rebuilt = createIndex();
+        rebuilt.reload(kept);
+
+        for (Airport from : kept) {
+            assertThat(index.findInRadius(from.getIata(), 2500),
+                    equalTo(rebuilt.findInRadius(from.getIata(), 2500)));
+            assertThat(index.findNearest(from.getIata(), 10),
+                    equalTo(rebuilt.findNearest(from.getIata(), 10)));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.timeseries;
+
+import com.crossover.trial.weather.domain.DataPoint;
+import com.crossover.trial.weather.domain.DataPointType;
+import com.crossover.trial.weather.domain.IATA;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.crossover.trial.weather.domain.DataPointType.HUMIDITY;
+import static com.crossover.trial.weather.domain.DataPointType.WIND;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class TimeSeriesStoreTest {
+
+    private static final IATA BOS = IATA.valueOf("BOS");
+    private static final IATA JFK = IATA.valueOf("JFK");
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now = 1_000_000;
+    private TimeSeriesStore store;
+
+    @Before
+    public void setup() throws IOException {
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testAppendAndLatest() {
+        store.append(BOS, dataPoint(WIND, 1));
+        now += 10;
+        store.append(BOS, dataPoint(HUMIDITY, 2));
+        now -= 100;
+        Sample latest = store.append(BOS, dataPoint(WIND, 3));
+
+        // Clock going back doesn't reorder the series
+        assertThat(latest.getTimestamp(), equalTo(1_000_000L));
+        assertThat(latest.getSequence(), equalTo(3L));
+        assertThat(store.latest(BOS, WIND).toDataPoint().getMean(), equalTo(3D));
+        assertThat(store.latest(BOS, HUMIDITY).toDataPoint().getMean(), equalTo(2D));
+        assertThat(store.latest(JFK, WIND), nullValue());
+        assertThat(store.latest().size(), equalTo(2));
+    }
+
+    @Test
+    public void testSealAndRecover() throws IOException {
+        for (int i = 1; i <= 10; i++) {
+            store.append(BOS, dataPoint(WIND, i));
+            now += 10;
+        }
+
+        // Chunks of four readings, two of them sealed
+        assertThat(folder.getRoot().listFiles().length, equalTo(2));
+        assertThat(store.countSince(0), equalTo(10L));
+        assertThat(store.countSince(1_000_030), equalTo(7L));
+        assertThat(store.countSince(1_000_095), equalTo(0L));
+
+        store.close();
+        store = open();
+
+        assertThat(folder.getRoot().listFiles().length, equalTo(3));
+        assertThat(store.latest(BOS, WIND).toDataPoint().getMean(), equalTo(10D));
+        assertThat(store.countSince(1_000_030), equalTo(7L));
+        assertThat(store.append(BOS, dataPoint(WIND, 11)).getSequence(), equalTo(11L));
+    }
+
+    @Test
+    public void testDelete() {
+        for (int i = 1; i <= 5; i++)
+            store.append(BOS, dataPoint(WIND, i));
+        store.append(JFK, dataPoint(WIND, 1));
+
+        store.delete(BOS);
+
+        File[] files = folder.getRoot().listFiles();
+        assertThat(files.length, equalTo(0));
+        assertThat(store.latest(BOS, WIND), nullValue());
+        assertThat(store.countSince(0), equalTo(1L));
+    }
+
+    private TimeSeriesStore open() throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore();
+        store.directory = folder.getRoot().getPath();
+        store.chunkSize = 4;
+        store.clock = () -> now;
+        store.open();
+        return store;
+    }
+
+    private static DataPoint dataPoint(DataPointType type, double mean) {
+        return new DataPoint.Builder()
+                .withType(type)
+                .withMean(mean)
+                .withFirst(1).withSecond(2).withThird(3)
+                .withCount(10)
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * The MIT License
+ * Copyright (c) 2016 Thiago Souza
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.crossover.trial.weather.util;
+
+import com.crossover.trial.weather.cache.WeatherResponseCache;
+import com.crossover.trial.weather.domain.Airport;
+import com.crossover.trial.weather.domain.AirportRepository;
+import com.crossover.trial.weather.domain.IATA;
+import com.crossover.trial.weather.spatial.AirportIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.ApplicationArguments;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class AirportLoaderTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSkipsAirportsAlreadyStored() throws Exception {
+        File dataFile = folder.newFile("airports.txt");
+        Files.write(dataFile.toPath(), asList(
+                "1,\"Logan\",\"Boston\",\"United States\",\"BOS\",\"KBOS\",42.364347,-71.005181,19,-5,\"A\"",
+                "2,\"Newark\",\"Newark\",\"United States\",\"EWR\",\"KEWR\",40.6925,-74.168667,18,-5,\"A\"",
+                "3,\"Kennedy\",\"New York\",\"United States\",\"JFK\",\"KJFK\",40.639751,-73.778925,13,-5,\"A\""));
+
+        List<Airport> stored = asList(
+                airport("BOS", 42.364347, -71.005181),
+                airport("EWR", 41, -74));
+        List<IATA> saved = new ArrayList<>();
+        List<IATA> indexed = new ArrayList<>();
+
+        AirportLoader loader = new AirportLoader();
+        loader.airportRepository = stub(AirportRepository.class, (method, args) -> {
+            if (method.equals("findAll"))
+                return stored;
+            saved.add(((Airport) args[0]).getIata());
+            return args[0];
+        });
+        loader.airportIndex = stub(AirportIndex.class, (method, args) -> {
+            indexed.add(((Airport) args[0]).getIata());
+            return null;
+        });
+        loader.responseCache = new WeatherResponseCache();
+        loader.responseCache.init();
+
+        loader.run(stub(ApplicationArguments.class, (method, args) -> method.equals("containsOption") ?
+                (Object) true :
+                Collections.singletonList(dataFile.getPath())));
+
+        // BOS is already stored where the file has it, EWR moved and JFK is new
+        assertThat(saved, equalTo(asList(IATA.valueOf("EWR"), IATA.valueOf("JFK"))));
+        assertThat(indexed, equalTo(saved));
+    }
+
+    private static Airport airport(String iata, double latitude, double longitude) {
+        return new Airport.Builder()
+                .withIata(IATA.valueOf(iata))
+                .withLatitude(latitude)
+                .withLongitude(longitude)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> handler.handle(method.getName(), args));
+    }
+
+    private interface Handler {
+        Object handle(String method, Object[] args);
+    }
+}